@@ -81,7 +81,7 @@ package lovelyanqi.script;
  * <br /><br />
  * <b><i>Script CopyRight V2.3  @author LovelyAnQi 2019.07.29</i></b>
  */
-public final class Script implements Functional/*, java.lang.Iterable<Script>*/ {
+public final class Script implements Functional, java.lang.Iterable<Script>, java.lang.Comparable<Script> {
 	/**
 	 * <b>LovelyAnQi.Script class <i>Script</i> Version</b>
 	 * <br />
@@ -93,8 +93,24 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 	 */
 	public static final String CopyRight = "LovelyAnQi.Script.Script [版本 V2.3 2019.07.29]";
 	
+	/**
+	 * <b>Serialization Format: <i>FormatV1</i></b><br />
+	 * The decimal byte format of passbytes(): lengths are ASCII decimals terminated
+	 * by '*' and every Number takes 5 bytes.
+	 */
+	public static final int FormatV1 = 1;
+	
+	/**
+	 * <b>Serialization Format: <i>FormatV2</i></b><br />
+	 * The compact byte format: a header byte, a string table of the Object keys used
+	 * more than once, varint lengths and zig-zag varint Numbers.
+	 * <br />
+	 * Load() recognizes either format by its first byte.
+	 */
+	public static final int FormatV2 = 2;
+	
 	/** <b>Type filter</b><br /> */
-	private enum Type {
+	enum Type {
 		Undefined, Null, String, Number, Boolean, Function, Pointer, Array, Object
 	}
 	
@@ -110,17 +126,26 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 	 */
 	private boolean isConstant;
 	
+	/**
+	 * <b>frozen lock</b><br />
+	 * Set for good when the element becomes an Object key, see freeze(): unlike the
+	 * constant lock, unlock() cannot lift it.
+	 */
+	private boolean isFrozen;
+	
 	/**
 	 * <b>Script Core Data Elements</b><br />
 	 * The data element entity of Script will be saved from this variable.
+	 * <br />
+	 * <i>Package-private: the codecs of this package read it directly.</i>
 	 */
-	private java.lang.Object script;
+	java.lang.Object script;
 	
 	/**
 	 * <b>Script Element Type</b><br />
 	 * A script element can only be one of the nine types identified.
 	 */
-	private Type type;
+	Type type;
 	
 	/**
 	 * <b>Public field: <i>False</i></b><br />
@@ -189,9 +214,17 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 	/**
 	 * <b>Unlocking Constant</b><br />
 	 * Unlock the constant lock of the element to restore the normal variable.
+	 * <br /><br />
+	 * <i>The keys of an Object stay constant: unlocking one throws RuntimeException</i>.
 	 */
 	public final Script unlock() {
 		this.checkUndefined("unlock()");
+		if (this.isFrozen) {
+			throw new java.lang.RuntimeException(
+					"IllegalFunctionInvocationException\n\t" +
+					"unlock() method cannot be invoked on an Object key"
+			);
+		}
 		
 		this.isConstant = false;
 		return this;
@@ -206,9 +239,9 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 	
 	/**
 	 * <b>Native Constructor</b><br />
-	 * Private constructor, one-step initialization using specified initial state.
+	 * Package-private constructor, one-step initialization using specified initial state.
 	 */
-	private Script(java.lang.Object script, Type type) {
+	Script(java.lang.Object script, Type type) {
 		super();							//Call Object.Object()
 		
 		/** Using the incoming parameter to construct a Script element */
@@ -273,32 +306,20 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 				/* Processing target data of type int[] */
 			} else if (object instanceof int[]) {
 				this.type = Type.Array;		//Type Relocation
-				int[] nativeNumberArray = (int[])object;
-				java.util.Vector<Script> nativeArray = new java.util.Vector<Script>();
-				
-				for (int index = 0; index < nativeNumberArray.length; index++) {
-					/** Native acceleration */
-					nativeArray.add(Script.Number(nativeNumberArray[index]));
-				}
-				this.script = nativeArray;
+				/** Native acceleration: packed, no Script per element */
+				this.script = new ScriptArray((int[])object);
 				
 				/* Processing target data of type boolean[] */
 			} else if (object instanceof boolean[]) {
 				this.type = Type.Array;		//Type Relocation
-				boolean[] nativeBooleanArray = (boolean[])object;
-				java.util.Vector<Script> nativeArray = new java.util.Vector<Script>();
-				
-				for (int index = 0; index < nativeBooleanArray.length; index++) {
-					/** Native acceleration */
-					nativeArray.add(Script.Boolean(nativeBooleanArray[index]));
-				}
-				this.script = nativeArray;
+				/** Native acceleration: packed, no Script per element */
+				this.script = new ScriptArray((boolean[])object);
 				
 				/* Processing target data of type String[] */
 			} else if (object instanceof java.lang.String[]) {
 				this.type = Type.Array;		//Type Relocation
 				java.lang.String[] nativeStringArray = (java.lang.String[])object;
-				java.util.Vector<Script> nativeArray = new java.util.Vector<Script>();
+				ScriptArray nativeArray = new ScriptArray(nativeStringArray.length);
 				
 				for (int index = 0; index < nativeStringArray.length; index++) {
 					/** Native acceleration */
@@ -450,7 +471,7 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 	 */
 	public static final Script Array(java.lang.Object... objects) {
 		
-		java.util.Vector<Script> nativeArray = new java.util.Vector<Script>();
+		ScriptArray nativeArray = new ScriptArray(objects == null ? 0 : objects.length);
 		
 		/** Array generation: Adding new instances of type inference in sequence */
 		if (objects != null && objects.length != 0) {
@@ -463,6 +484,54 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 		return new Script(nativeArray, Type.Array);
 	}
 	
+	/**
+	 * <b>Script Type Constructor: DirectArray</b><br />
+	 * DirectArray() generates an Array of Numbers held off the Java heap, over the
+	 * 4-byte ints from the position to the limit of a buffer, in the byte order of the
+	 * buffer. The buffer is wrapped and not copied, so a direct or memory-mapped
+	 * buffer of any size costs the garbage collector nothing.
+	 * <pre>
+	 *     java.nio.MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, channel.size());
+	 *     Script array = Script.DirectArray(buffer);
+	 *     array.set(0, 42);                  //Written into the file
+	 * </pre>
+	 * index(), intValue(), set() of a Number, length(), passbytes() and toString() work
+	 * on the buffer in place. index() returns a new Number holding the value, not a
+	 * reference to the element.
+	 * <br /><br />
+	 * Warning: <i>Any other write (an element of another type, a change of length, a
+	 * sort, a write through a subarray, or any write to a read-only buffer) first copies
+	 * the values onto the heap, after which the Array is an ordinary one and the buffer
+	 * is left alone. Higher-order operations and toArray() create element Scripts on the
+	 * heap</i>.
+	 */
+	public static final Script DirectArray(java.nio.ByteBuffer buffer) {
+		if (buffer == null) {
+			throw new RuntimeException(
+					"IllegalArgumentException\n\t" +
+					"DirectArray() requires a buffer"
+			);
+		}
+		
+		/** Native acceleration */
+		return new Script(new ScriptArray(buffer), Type.Array);
+	}
+	
+	/**
+	 * <b>Script Type Constructor: DirectArray</b><br />
+	 * DirectArray(int) generates an Array of the given number of zeros, held off the
+	 * Java heap in a new direct buffer in the native byte order.
+	 */
+	public static final Script DirectArray(int length) {
+		if (length < 0 || length > java.lang.Integer.MAX_VALUE >> 2) {
+			throw new RuntimeException(
+					"IllegalArgumentException\n\t" +
+					"DirectArray() cannot hold " + length + " Numbers"
+			);
+		}
+		return Script.DirectArray(java.nio.ByteBuffer.allocateDirect(length << 2).order(java.nio.ByteOrder.nativeOrder()));
+	}
+	
 	/**
 	 * <b>Script Type Constructor: Object</b><br />
 	 * Object() is an Object type generator, which can reliably generate a Script
@@ -473,7 +542,7 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 	 */
 	public static final Script Object() {
 		
-		java.util.Map<Script, Script> nativeObject = new java.util.HashMap<Script, Script>();
+		java.util.Map<Script, Script> nativeObject = new ScriptObject();
 		/** Native acceleration */
 		return new Script(nativeObject, Type.Object);
 	}
@@ -512,7 +581,7 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 		}
 		
 		Script key;							//Temporarily retain key references
-		java.util.Map<Script, Script> nativeObject = new java.util.HashMap<Script, Script>();
+		java.util.Map<Script, Script> nativeObject = new ScriptObject();
 		for (int i = 0; i < objects.length; i += 2) {
 			if (!checkKeyType(key = new Script(objects[i]))) {
 				throw new java.lang.RuntimeException(
@@ -541,7 +610,7 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 		}
 		
 		Script key;							//Temporarily retain key references
-		java.util.Map<Script, Script> nativeObject = new java.util.HashMap<Script, Script>();
+		java.util.Map<Script, Script> nativeObject = new ScriptObject();
 		for (int i = 0; i < keys.length; ++i) {
 			if (!checkKeyType(key = new Script(keys[i]))) {
 				throw new java.lang.RuntimeException(
@@ -554,6 +623,21 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 		/** Native acceleration */
 		return new Script(nativeObject, Type.Object);
 	}
+	
+	/**
+	 * <b>Script Convenient Construction: Object keys</b><br />
+	 * InternKeys(true) turns on the pool of Object member names: from then on every
+	 * String key added to an Object, by <code>ListObject()</code>, <code>TemplateObject()</code>,
+	 * <code>mem()</code>, <code>Load()</code> or a copy, is shared with every other
+	 * Object that has a member of the same name. Identical keys are one frozen Script,
+	 * and Objects built alike compare their keys by identity.
+	 * <br /><br />
+	 * <i>The pool only grows while it is on: it suits the member names of a program,
+	 * not keys made from data. InternKeys(false) turns it off and empties it</i>.
+	 */
+	public static final void InternKeys(boolean enabled) {
+		ScriptKeys.enable(enabled);
+	}
 	/**********************************************************/
 	
 	
@@ -606,6 +690,69 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 		);	
 	}
 	
+	/**
+	 * <b>Script Common Method: nativeData()</b><br />
+	 * Returns the data element entity. An Array or Object loaded lazily is decoded
+	 * at this point, its own composite members stay lazy until they are accessed.
+	 */
+	final java.lang.Object nativeData() {
+		if (this.script instanceof ScriptDecoder.Slice) {
+			this.script = ((ScriptDecoder.Slice)this.script).materialize();
+		} else if (this.script instanceof Share) {
+			this.script = ((Share)this.script).detach(this.type);
+		}
+		return this.script;
+	}
+	
+	/**
+	 * <b>Script Common Method: nativeArray()</b><br />
+	 * Returns the data structure of an Array. Type checking is done at the caller.
+	 */
+	final ScriptArray nativeArray() {
+		return (ScriptArray)this.nativeData();
+	}
+	
+	/**
+	 * <b>Script Common Method: nativeObject()</b><br />
+	 * Returns the data structure of an Object. Type checking is done at the caller.
+	 */
+	final ScriptObject nativeObject() {
+		return (ScriptObject)this.nativeData();
+	}
+	
+	/**
+	 * <b>Script Common Method: freeze()</b><br />
+	 * Locks the element as a constant for good and freezes its Array or Object storage,
+	 * deeply, when it becomes an Object key: it can no longer change, so its hash code
+	 * is cached for good. Unlike lock(), the freeze cannot be undone.
+	 */
+	final void freeze() {
+		this.isFrozen = true;
+		this.isConstant = true;
+		if (this.type == Type.Array) {
+			this.nativeArray().freeze();
+		} else if (this.type == Type.Object) {
+			this.nativeObject().freeze();
+		}
+	}
+	
+	/**
+	 * <b>Script Common Method: readArray()</b><br />
+	 * Returns the data structure of an Array for reading only: a storage shared with
+	 * copy-on-write clones is read in place instead of being copied.
+	 */
+	final ScriptArray readArray() {
+		return (ScriptArray)(this.script instanceof Share ? ((Share)this.script).storage : this.nativeData());
+	}
+	
+	/**
+	 * <b>Script Common Method: readObject()</b><br />
+	 * Returns the data structure of an Object for reading only, as readArray() does.
+	 */
+	final ScriptObject readObject() {
+		return (ScriptObject)(this.script instanceof Share ? ((Share)this.script).storage : this.nativeData());
+	}
+	
 	/**
 	 * <b>Script Common Method: typeof()</b><br />
 	 * Returns a string that refers to the current Script element type.
@@ -614,6 +761,91 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 		return this.type.toString();
 	}
 	
+	/**
+	 * <b>Script Common Method: iterator()</b><br />
+	 * Returns an iterator over the elements (directly referenced) of an Array, or
+	 * over the keys of an Object. The elements of an Array are read straight from
+	 * its storage, without copying it nor checking each index:
+	 * <pre>
+	 *     for (Script element : array) {
+	 *         ...
+	 *     }
+	 * </pre>
+	 * Warning: <i>Changing the Array other than through the iterator throws
+	 * ConcurrentModificationException on the next step</i>.
+	 */
+	@Override
+	public final java.util.Iterator<Script> iterator() {
+		this.checkUndefined("iterator()");
+		this.checkType("iterator()", Type.Array, Type.Object);
+		
+		if (this.type == Type.Object) {
+			ScriptObject nativeObject = this.nativeObject();
+			nativeObject.expose();
+			return nativeObject.keySet().iterator();
+		}
+		ScriptArray nativeArray = this.nativeArray();
+		nativeArray.expose();
+		return nativeArray.iterator();
+	}
+	
+	/**
+	 * <b>Script Common Method: spliterator()</b><br />
+	 * Returns a spliterator over the elements of an Array, or the keys of an Object,
+	 * reporting SIZED, SUBSIZED and ORDERED: it splits in exact halves, which keeps
+	 * parallel streams balanced.
+	 * <br /><br />
+	 * <i>The keys of an Object are taken as a snapshot, later changes to the Object
+	 * are not seen</i>.
+	 */
+	@Override
+	public final java.util.Spliterator<Script> spliterator() {
+		this.checkUndefined("spliterator()");
+		this.checkType("spliterator()", Type.Array, Type.Object);
+		
+		if (this.type == Type.Object) {
+			ScriptObject nativeObject = this.nativeObject();
+			nativeObject.expose();
+			java.util.Set<Script> nativeKeys = nativeObject.keySet();
+			return java.util.Spliterators.spliterator(
+					nativeKeys.toArray(new Script[nativeKeys.size()]), java.util.Spliterator.ORDERED
+			);
+		}
+		ScriptArray nativeArray = this.nativeArray();
+		nativeArray.expose();
+		return nativeArray.spliterator();
+	}
+	
+	/**
+	 * <b>Script Common Method: stream()</b><br />
+	 * Returns a sequential stream over the elements of an Array, or the keys of an
+	 * Object. Call parallel() on it for a parallel stream.
+	 */
+	public final java.util.stream.Stream<Script> stream() {
+		return java.util.stream.StreamSupport.stream(this.spliterator(), false);
+	}
+	
+	/**
+	 * <b>Script Common Method: entryStream()</b><br />
+	 * Returns a sequential stream over the entries of an Object, taken as a snapshot
+	 * that splits in exact halves (SIZED, SUBSIZED and ORDERED).
+	 * <br /><br />
+	 * <i>The values of the entries are those of the Object, setValue() writes through</i>.
+	 */
+	public final java.util.stream.Stream<java.util.Map.Entry<Script, Script>> entryStream() {
+		this.checkUndefined("entryStream()");
+		this.checkType("entryStream()", Type.Object);
+		
+		ScriptObject nativeObject = this.nativeObject();
+		nativeObject.expose();
+		java.util.Set<java.util.Map.Entry<Script, Script>> nativeEntries = nativeObject.entrySet();
+		@SuppressWarnings("unchecked")
+		java.util.Map.Entry<Script, Script>[] snapshot = (java.util.Map.Entry<Script, Script>[])nativeEntries.toArray(new java.util.Map.Entry<?, ?>[nativeEntries.size()]);
+		return java.util.stream.StreamSupport.stream(
+				java.util.Spliterators.spliterator(snapshot, java.util.Spliterator.ORDERED), false
+		);
+	}
+	
 	/**
 	 * <b>Script Common Method: typeof(String testType)</b><br />
 	 * Test whether the type of the current Script element is equivalent
@@ -630,7 +862,7 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 	 * Returns whether a Script instance is a constant.
 	 */
 	public final boolean isConstant() {
-		return this.isConstant;
+		return this.isConstant || this.isFrozen;
 	}
 	
 	/**
@@ -676,6 +908,137 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 		return new Script(this);	//Clone() method is equivalent to calling new Script(this)
 	}
 	
+	/**
+	 * <i>Script::LazyClone()</i><br />
+	 * Returns a copy-on-write clone of the current element, equal to Clone() in every
+	 * observable way but made in constant time: the clone and this element share their
+	 * Array or Object storage, and each level of the tree is copied only when it is
+	 * first reached through either of them, by a write (let, set, append, remove...)
+	 * or by a read handing out its members (index, mem...). Levels that are never
+	 * reached are never copied.
+	 * <pre>
+	 *     Script request = config.LazyClone();       //O(1), whatever the size of config
+	 *     request.mem("limits").mem("rate").let(10); //Copies the root and "limits" only
+	 * </pre>
+	 * A level whose members have already been handed out by reference is copied at
+	 * once, so that writes through those references are only seen by this element.
+	 * <br /><br />
+	 * <i>Clones may be used on other threads than this element: the shared storage
+	 * itself is never written to while shared</i>.
+	 */
+	public final Script LazyClone() {
+		this.checkUndefined("LazyClone()");
+		
+		return Script.shareOf(this);
+	}
+	
+	/**
+	 * <b>Script Common Method: shareOf(Script)</b><br />
+	 * Returns a copy-on-write clone of an element: a Share of its storage if no
+	 * member of the storage has been handed out, otherwise a copy of the level whose
+	 * members are shared in turn. Simple types are copied.
+	 * <br />
+	 * <i>A direct storage is copied at once, to the heap: the caller's buffer stays
+	 * with the source, whichever element writes first</i>. A frozen storage is never
+	 * shared either, the clone gets an unfrozen copy of the level.
+	 */
+	static Script shareOf(Script source) {
+		if (source.type != Type.Array && source.type != Type.Object) {
+			return new Script(source);
+		}
+		java.lang.Object storage;
+		synchronized (source) {
+			storage = source.script;
+			if (source.isFrozen) {
+				return new Script(Script.copyLevel(source.type, storage), source.type);		//An Object key keeps its storage
+			}
+			if (storage instanceof ScriptDecoder.Slice) {
+				return new Script(storage, source.type);		//Immutable already
+			}
+			if (storage instanceof Share) {
+				return new Script(((Share)storage).join(), source.type);
+			}
+			boolean exposed = source.type == Type.Array
+					? ((ScriptArray)storage).isExposed() || ((ScriptArray)storage).memory != null
+					: ((ScriptObject)storage).isExposed();
+			if (!exposed) {
+				/** Both elements now reach the storage through the same Share */
+				Share share = new Share(storage);
+				source.script = share;
+				return new Script(share.join(), source.type);
+			}
+		}
+		return new Script(Script.copyLevel(source.type, storage), source.type);
+	}
+	
+	/**
+	 * <b>Script Common Method: copyLevel(Type, Object)</b><br />
+	 * Copies one level of an Array or Object storage, its composite members being
+	 * shared with the copy through shareOf().
+	 */
+	static java.lang.Object copyLevel(Type type, java.lang.Object storage) {
+		if (type == Type.Array) {
+			ScriptArray externArray = (ScriptArray)storage;
+			ScriptArray nativeArray = externArray.packedCopy();		//Packed values are copied at once
+			if (nativeArray == null) {
+				int size = externArray.size();
+				nativeArray = new ScriptArray(size);
+				for (int index = 0; index < size; index++) {
+					nativeArray.add(Script.shareOf(externArray.get(index)));
+				}
+			}
+			return nativeArray;
+		}
+		ScriptObject externObject = (ScriptObject)storage;
+		ScriptObject nativeObject = new ScriptObject(externObject.size());
+		for (java.util.Map.Entry<Script, Script> nativeEntry : externObject.entrySet()) {
+			nativeObject.put(nativeEntry.getKey(), Script.shareOf(nativeEntry.getValue()));
+		}
+		return nativeObject;
+	}
+	
+	/**
+	 * Class {@code Script.Share} holds an Array or Object storage shared by the
+	 * elements of copy-on-write clones, and counts them. Each of them detaches once:
+	 * the last one takes the storage itself, the others copy one level of it.
+	 */
+	static final class Share {
+		
+		/** Shared storage, never written to while shared */
+		private final java.lang.Object storage;
+		
+		/** Number of elements holding this Share */
+		private int owners;
+		
+		Share(java.lang.Object storage) {
+			this.storage = storage;
+			this.owners = 1;
+		}
+		
+		/** Counts one more element holding this Share, and returns it */
+		synchronized Share join() {
+			this.owners++;
+			return this;
+		}
+		
+		/** Returns a storage of its own to an element holding this Share */
+		java.lang.Object detach(Type type) {
+			synchronized (this) {
+				if (this.owners == 1) {
+					this.owners = 0;
+					return this.storage;		//Nobody else is reading it any more
+				}
+			}
+			
+			/** Copied before leaving, so the last owner only writes once every copy is done */
+			java.lang.Object copy = Script.copyLevel(type, this.storage);
+			synchronized (this) {
+				this.owners--;
+			}
+			return copy;
+		}
+	}
+	
 	/**
 	 * <i>Script::Clone(Script)</i><br />
 	 * Create a copy of the specified script element on the current script
@@ -690,6 +1053,9 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 	 */
 	public final Script Clone(Script source) {
 		this.checkConstant("Clone(Script)");
+		if (this.script instanceof Pending) {
+			return ((Pending)this.script).settle(this, source);
+		}
 		
 		if (source == null) {
 			return this.let(null);
@@ -710,21 +1076,29 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 			this.type = Type.Function;
 		}
 		
+		/* Lazily loaded composites share their immutable serialized slice */
+		else if (source.script instanceof ScriptDecoder.Slice) {
+			this.script = source.script;
+			this.type = source.type;
+		}
+		
 		/* Composite data types */
 		else if (source.type == Type.Array) {		//Array parsing
 			
-			@SuppressWarnings("unchecked")
-			//Get the data structure itself of the target Array
-			java.util.Vector<Script> externArray = (java.util.Vector<Script>)source.script;
-			java.util.Iterator<Script> externArrayIterator = externArray.iterator();	//Obtaining iterators
-			java.util.Vector<Script> nativeArray = new java.util.Vector<Script>();
+			//Get the data structure itself of the target Array, a shared one is only read
+			ScriptArray externArray = source.readArray();
+			ScriptArray nativeArray = externArray.packedCopy();		//Packed values are copied at once
 			
 			/* Iterate the original Array sequentially */
-			while (externArrayIterator.hasNext()) {
-				/**
-				 * Calling new Script(Script) directly is more efficient than calling script.Clone()
-				 */
-				nativeArray.add(new Script(externArrayIterator.next()));
+			if (nativeArray == null) {
+				java.util.Iterator<Script> externArrayIterator = externArray.iterator();	//Obtaining iterators
+				nativeArray = new ScriptArray(externArray.size());
+				while (externArrayIterator.hasNext()) {
+					/**
+					 * Calling new Script(Script) directly is more efficient than calling script.Clone()
+					 */
+					nativeArray.add(new Script(externArrayIterator.next()));
+				}
 			}
 			
 			this.script = nativeArray;
@@ -734,15 +1108,14 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 		/* Composite data types */
 		else if (source.type == Type.Object) {		//Object parsing
 			
-			@SuppressWarnings("unchecked")
-			//Get the data structure itself of the target Object
-			java.util.Map<Script, Script> externObject = (java.util.HashMap<Script, Script>)source.script;
+			//Get the data structure itself of the target Object, a shared one is only read
+			java.util.Map<Script, Script> externObject = source.readObject();
 			/**
 			 * Get Entry iterator of Map
 			 * Native and Efficient Iteration Scheme
 			 */
 			java.util.Iterator<java.util.Map.Entry<Script, Script>> externObjectIterator = externObject.entrySet().iterator();
-			java.util.Map<Script, Script> nativeObject = new java.util.HashMap<Script, Script>();
+			java.util.Map<Script, Script> nativeObject = new ScriptObject();
 			
 			java.util.Map.Entry<Script, Script> nativeEntry;
 			/* Iterate the original Object sequentially */
@@ -756,7 +1129,7 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 				/**
 				 * Calling new Script(Script) directly is more efficient than calling script.Clone()
 				 */
-				nativeObject.put(new Script(nativeEntry.getKey()), new Script(nativeEntry.getValue()));
+				nativeObject.put(nativeEntry.getKey(), new Script(nativeEntry.getValue()));		//Keys are frozen, shared as they are
 			}
 
 			this.script = nativeObject;
@@ -765,8 +1138,9 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 			/**
 			 * Type as:	( those.script is constant )
 			 * { Undefined, Null, String, Number, Boolean, Pointer }
+			 * (except the Pending of a slot from mem(Object), which stays with it)
 			 */
-			this.script = source.script;
+			this.script = source.script instanceof Pending ? null : source.script;
 			this.type = source.type;
 		}
 		
@@ -789,6 +1163,9 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 	public final Script let(Object object) {
 		//Check Constant Legitimacy
 		this.checkConstant("let(Object)");
+		if (this.script instanceof Pending) {
+			return ((Pending)this.script).settle(this, object);
+		}
 		
 		/**
 		 * Directional instantiation: Null
@@ -825,7 +1202,8 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 	}
 	
 	/**
-	 * <i>Serialization Generator</i>
+	 * <i>Script::passbytes()</i><br />
+	 * Get the serialized byte stream of a Script.
 	 * <br /><br />
 	 * Fixed length format:<br />
 	 * <i>Undefined = u, Null = n, Boolean = t/f, Number = i(00000000)(16)</i>
@@ -833,192 +1211,219 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 	 * Indefinite length format:<br />
 	 * <i>String = s[Dec]*[string], Array = a[Dec]*[arrays], Object = o[Dec]*[objects]</i>
 	 */
-	private final java.util.Vector<Byte> passbytes(java.util.Vector<Byte> bytes) {
+	public final byte[] passbytes() {
 		
-		/** Serialization type checking */
-		if (this.type == Type.Pointer || this.type == Type.Function) {
-			throw new RuntimeException(
-					"Unsupported Serialization Type: " + this.typeof() + 
-					"\tDetails: " + this.toString()
-			);
-		}
+		/** Size estimation pass: the encoder is presized to the exact length */
+		ScriptEncoder encoder = new ScriptEncoder(ScriptEncoder.sizeOf(this));
 		
-		/** Determine whether the array is initialized for the first time */
-		if (bytes == null) {
-			bytes = new java.util.Vector<Byte>();
-		}
+		/** Serialization Generator */
+		encoder.encode(this);
+		return encoder.toByteArray();
+	}
+	
+	/**
+	 * <i>Script::passbytes(int format)</i><br />
+	 * Get the serialized byte stream of a Script in the given format,
+	 * <code>Script.FormatV1</code> or <code>Script.FormatV2</code>.
+	 * <br /><br />
+	 * The compact format writes repeated Object keys once into a string table,
+	 * lengths as varints and Numbers as zig-zag varints, which roughly halves
+	 * key-heavy Object payloads.
+	 */
+	public final byte[] passbytes(int format) {
 		
-		/** Undefined is identified as u */
-		if (this.type == Type.Undefined) {
-			bytes.add((byte)'u');
-			
-			/** Null is identified as n */
-		} else if (this.type == Type.Null) {
-			bytes.add((byte)'n');
-			
-			/** Boolean is identified as t(true) or f(false) */
-		} else if (this.type == Type.Boolean) {
-			Boolean booleanValue = (Boolean)this.script;
-			bytes.add(booleanValue ? (byte)'t' : (byte)'f');
-			
-			/** Number is identified as i(00000000)(16) */
-		} else if (this.type == Type.Number) {
-			int intValue = (Integer)this.script;
-			bytes.add((byte)'i');
-			bytes.add((byte)(intValue >> 0x18));
-			bytes.add((byte)((intValue >> 0x10) & 0xFF));
-			bytes.add((byte)((intValue >> 0x08) & 0xFF));
-			bytes.add((byte)(intValue & 0xFF));
-		}
-		
-		/** Variable-length serialization algorithm for Strings */
-		if (this.type == Type.String) {
-			String stringValue = (String)this.script;
-			try {
-				byte[] stringBytes = stringValue.getBytes("UTF-8");
-				bytes.add((byte)'s');
-				String length = String.valueOf(stringBytes.length);
-				byte[] lengthBytes = length.getBytes("ASCII");
-				for (int i = 0; i < lengthBytes.length; i++) {
-					bytes.add(lengthBytes[i]);
-				}
-				bytes.add((byte)'*');
-				for (int i = 0; i < stringBytes.length; i++) {
-					bytes.add(stringBytes[i]);
-				}
-			} catch (java.io.UnsupportedEncodingException e) {}
+		if (format == Script.FormatV1) {
+			return this.passbytes();
 		}
+		ScriptEncoder.checkFormat(format);
 		
-		/** Combination Types: Serialization of Arrays */
-		if (this.type == Type.Array) {
-			@SuppressWarnings("unchecked")
-			java.util.Vector<Script> nativeArray = (java.util.Vector<Script>)this.script;
-			try {
-				bytes.add((byte)'a');
-				String length = String.valueOf(nativeArray.size());
-				byte[] lengthBytes = length.getBytes("ASCII");
-				for (int i = 0; i < lengthBytes.length; i++) {
-					bytes.add(lengthBytes[i]);
-				}
-				bytes.add((byte)'*');
-				for (int i = 0; i < nativeArray.size(); i++) {
-					nativeArray.get(i).passbytes(bytes);
-				}
-			} catch (java.io.UnsupportedEncodingException e) {}
+		/** The compact encoder presizes itself from its key census */
+		ScriptEncoder encoder = new ScriptEncoder(0);
+		encoder.encodeCompact(this);
+		return encoder.toByteArray();
+	}
+	
+	/**
+	 * <i>Script::passbytes(java.nio.ByteBuffer)</i><br />
+	 * Serialize the Script into a caller-supplied buffer, starting at its current
+	 * position. The position is advanced past the written bytes.
+	 * <br /><br />
+	 * Warning: <i>If the remaining space of the buffer is not enough for the whole
+	 * serialized Script, java.nio.BufferOverflowException is thrown and nothing is written</i>.
+	 */
+	public final java.nio.ByteBuffer passbytes(java.nio.ByteBuffer target) {
+		
+		int size = ScriptEncoder.sizeOf(this);
+		if (target.remaining() < size) {
+			throw new java.nio.BufferOverflowException();
 		}
 		
-		/** Combination Types: Serialization of Objects */
-		if (this.type == Type.Object) {
-			@SuppressWarnings("unchecked")
-			java.util.Map<Script, Script> nativeObject = (java.util.Map<Script, Script>)this.script;
-			try {
-				bytes.add((byte)'o');
-				String length = String.valueOf(nativeObject.size());
-				byte[] lengthBytes = length.getBytes("ASCII");
-				for (int i = 0; i < lengthBytes.length; i++) {
-					bytes.add(lengthBytes[i]);
-				}
-				bytes.add((byte)'*');
-				
-				java.util.Iterator<java.util.Map.Entry<Script, Script>> nativeIterator = nativeObject.entrySet().iterator();
-				java.util.Map.Entry<Script, Script> nativeEntry;
-				while (nativeIterator.hasNext()) {
-					nativeEntry = nativeIterator.next();
-					nativeEntry.getKey().passbytes(bytes);
-					nativeEntry.getValue().passbytes(bytes);
-				}
-			} catch (java.io.UnsupportedEncodingException e) {}
+		/** Heap buffers are written in place, others receive a single bulk copy */
+		if (target.hasArray()) {
+			int offset = target.arrayOffset() + target.position();
+			new ScriptEncoder(target.array(), offset).encode(this);
+			target.position(target.position() + size);
+		} else {
+			ScriptEncoder encoder = new ScriptEncoder(size);
+			encoder.encode(this);
+			target.put(encoder.toByteArray());
 		}
 		
-		return bytes;
+		return target;
 	}
 	
 	/**
-	 * <i>Script::passbytes()</i><br />
-	 * Get the serialized byte stream of a Script.
+	 * <i>Script::canonicalPassbytes()</i><br />
+	 * Get the serialized byte stream of a Script in canonical form: the format of
+	 * <code>passbytes()</code>, with the members of every Object ordered by the
+	 * unsigned bytes of their serialized keys, and the members of value Undefined,
+	 * which equals() ignores, left out.
+	 * <br /><br />
+	 * Equal Scripts always produce the same canonical bytes, whatever the order
+	 * their members were added in, so the bytes can be compared or hashed directly.
 	 */
-	public final byte[] passbytes() {
+	public final byte[] canonicalPassbytes() {
+		ScriptEncoder encoder = new ScriptEncoder(ScriptEncoder.sizeOf(this)).canonical();
+		encoder.encode(this);
+		return encoder.toByteArray();
+	}
+	
+	/**
+	 * <i>Script::digest()</i><br />
+	 * Get a 64-bit content hash of the Script, for use as a cache or dedup key.
+	 * It is the first half of <code>digest128()</code>.
+	 */
+	public final long digest() {
+		return ScriptDigest.of(this)[0];
+	}
+	
+	/**
+	 * <i>Script::digest128()</i><br />
+	 * Get a 128-bit content hash of the Script: MurmurHash3 x64 128 with seed 0 of
+	 * <code>canonicalPassbytes()</code>, as 16 bytes with each 64-bit half in
+	 * little-endian order.
+	 * <br /><br />
+	 * The canonical bytes are hashed as they are produced, in one pass through a
+	 * small fixed buffer, and never held in memory as a whole.
+	 */
+	public final byte[] digest128() {
+		long[] halves = ScriptDigest.of(this);
+		return java.nio.ByteBuffer.allocate(16).order(java.nio.ByteOrder.LITTLE_ENDIAN)
+				.putLong(halves[0]).putLong(halves[1]).array();
+	}
+	
+	/**
+	 * <i>Script::parallelPassbytes()</i><br />
+	 * Get the serialized byte stream of a Script, encoding the members of a wide
+	 * Array or Object on the common ForkJoinPool.
+	 * <br /><br />
+	 * The result is the same as that of <code>passbytes()</code>, byte for byte.
+	 * Small Scripts are serialized on the calling thread.
+	 */
+	public final byte[] parallelPassbytes() {
+		return this.parallelPassbytes(Script.FormatV1, java.util.concurrent.ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * <i>Script::parallelPassbytes(int format, java.util.concurrent.ForkJoinPool)</i><br />
+	 * Get the serialized byte stream of a Script in the given format, encoding the
+	 * members of a wide Array or Object on the given pool.
+	 * <br /><br />
+	 * The members are cut into chunks that are encoded into buffers of their own and
+	 * joined in order, so the result is the same as that of <code>passbytes(int format)</code>.
+	 * <br /><br />
+	 * Warning: <i>The Script must not be modified while it is being serialized</i>.
+	 */
+	public final byte[] parallelPassbytes(int format, java.util.concurrent.ForkJoinPool pool) {
+		ScriptEncoder.checkFormat(format);
+		return ScriptEncoder.encodeParallel(this, format, pool);
+	}
+	
+	/**
+	 * <i>Script::writeTo(java.io.OutputStream)</i><br />
+	 * Serialize the Script straight into a stream, in the format of <code>passbytes()</code>.
+	 * Returns the number of bytes written.
+	 * <br /><br />
+	 * The bytes pass through one small fixed buffer which is written out whenever it
+	 * is full, so the serialized form is never held in memory as a whole. The stream
+	 * itself is neither flushed nor closed.
+	 * <br /><br />
+	 * Warning: <i>If writing fails halfway, the bytes already written stay on the stream</i>.
+	 */
+	public final long writeTo(java.io.OutputStream stream) throws java.io.IOException {
+		return this.writeTo(new ScriptEncoder(stream, ScriptEncoder.SINK_SIZE), Script.FormatV1);
+	}
+	
+	/**
+	 * <i>Script::writeTo(java.io.OutputStream, int format)</i><br />
+	 * Serialize the Script straight into a stream in the given format,
+	 * <code>Script.FormatV1</code> or <code>Script.FormatV2</code>.
+	 */
+	public final long writeTo(java.io.OutputStream stream, int format) throws java.io.IOException {
+		return this.writeTo(new ScriptEncoder(stream, ScriptEncoder.SINK_SIZE), format);
+	}
+	
+	/**
+	 * <i>Script::writeTo(java.nio.channels.WritableByteChannel)</i><br />
+	 * Serialize the Script straight into a channel, in the format of <code>passbytes()</code>.
+	 * Returns the number of bytes written.
+	 * <br /><br />
+	 * Each write is repeated until the buffer has been taken entirely, which makes
+	 * non-blocking channels spin while they are not ready.
+	 */
+	public final long writeTo(java.nio.channels.WritableByteChannel channel) throws java.io.IOException {
+		return this.writeTo(new ScriptEncoder(channel, ScriptEncoder.SINK_SIZE), Script.FormatV1);
+	}
+	
+	/**
+	 * <i>Script::writeTo(java.nio.channels.WritableByteChannel, int format)</i><br />
+	 * Serialize the Script straight into a channel in the given format,
+	 * <code>Script.FormatV1</code> or <code>Script.FormatV2</code>.
+	 */
+	public final long writeTo(java.nio.channels.WritableByteChannel channel, int format) throws java.io.IOException {
+		return this.writeTo(new ScriptEncoder(channel, ScriptEncoder.SINK_SIZE), format);
+	}
+	
+	/** Streaming Serialization Generator */
+	private long writeTo(ScriptEncoder encoder, int format) throws java.io.IOException {
 		
-		/** Serialization Generator */
-		java.util.Vector<Byte> arrayBytes = this.passbytes(null);
+		ScriptEncoder.checkFormat(format);
 		
-		/** Sequence Stream Reconstruction */
-		byte[] bytes = new byte[arrayBytes.size()];
-		for (int inc = 0; inc < bytes.length; inc++) {
-			bytes[inc] = arrayBytes.get(inc);
+		/** Buffer flushes deep in the recursion report I/O failures unchecked */
+		try {
+			if (format == Script.FormatV1) {
+				encoder.encode(this);
+			} else {
+				encoder.encodeCompact(this);
+			}
+		} catch (java.io.UncheckedIOException e) {
+			throw e.getCause();
 		}
 		
-		return bytes;
+		encoder.flush();
+		return encoder.flushed();
 	}
 	
 	/**
 	 * <i>Script::Load(java.util.InputStream)</i><br />
 	 * Native deserialization operation of script, which reads the <i>first Script element</i>
 	 *  from the input stream for construction.
+	 * <br /><br />
+	 * The stream is read in blocks. Whatever bytes follow the first element stay readable
+	 * on the stream for the next Load call, read-ahead is handed back through
+	 * <code>mark()/reset()</code> when the stream supports it and is avoided otherwise.
+	 * <i>Wrapping unbuffered streams in a java.io.BufferedInputStream is recommended</i>.
+	 * <br /><br />
+	 * Warning: <i>Truncated or malformed input throws RuntimeException</i>.
 	 */
 	public final static Script Load(java.io.InputStream bytes) {
 		
-		Script nativeScript = null;
-		
-		try {
-			int lengthSeeker = 0, length;
-			byte[] lengthBuff = new byte[0x10];
-			switch (bytes.read()) {
-			case 'u':
-				nativeScript = Script.Undefined();
-				break;
-			case 'n':
-				nativeScript = Script.Null();
-				break;
-			case 't':
-				nativeScript = Script.Boolean(true);
-				break;
-			case 'f':
-				nativeScript = Script.Boolean(false);
-				break;
-			case 'i':
-				int nativeNumber = 0;
-				for (int inc = 0; inc < 4; inc++) {
-					nativeNumber <<= 0x08;
-					nativeNumber += bytes.read();
-				}
-				nativeScript = Script.Number(nativeNumber);
-				break;
-			case 's':
-				while ((lengthBuff[lengthSeeker++] = (byte)bytes.read()) != '*');
-				length = Integer.valueOf(new String(lengthBuff, 0, lengthSeeker - 1, "ASCII"));
-				byte[] stringBuffer = new byte[length];
-				for (int inc = 0; inc < length; inc++) {
-					stringBuffer[inc] = (byte)bytes.read();
-				}
-				nativeScript = Script.String(new String(stringBuffer, "UTF-8"));
-				break;
-			case 'a':
-				while ((lengthBuff[lengthSeeker++] = (byte)bytes.read()) != '*');
-				length = Integer.valueOf(new String(lengthBuff, 0, lengthSeeker - 1, "ASCII"));
-				nativeScript = Script.Array();
-				@SuppressWarnings("unchecked")
-				java.util.Vector<Script> nativeArray = (java.util.Vector<Script>)nativeScript.script;
-				while (length-- > 0) {
-					nativeArray.add(Script.Load(bytes));
-				}
-				break;
-			case 'o':
-				while ((lengthBuff[lengthSeeker++] = (byte)bytes.read()) != '*');
-				length = Integer.valueOf(new String(lengthBuff, 0, lengthSeeker - 1, "ASCII"));
-				nativeScript = Script.Object();
-				@SuppressWarnings("unchecked")
-				java.util.Map<Script, Script> nativeObject = (java.util.Map<Script, Script>)nativeScript.script;
-				while (length-- > 0) {
-					nativeObject.put(Script.Load(bytes), Script.Load(bytes));
-				}
-				break;
-			default:
-				break;
-			}
-		} catch (java.io.IOException e) {}
+		ScriptDecoder decoder = new ScriptDecoder(bytes);
+		Script nativeScript = decoder.decode();
 		
-		return nativeScript == null ? Script.Undefined() : nativeScript;
+		/** Hand the read-ahead bytes back to the stream */
+		decoder.release();
+		return nativeScript;
 	}
 	
 	/**
@@ -1037,8 +1442,86 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 	 */
 	public final static Script Load(byte[] bytes, int offset, int length) {
 		
-		/** Build byte streams and generate script elements */
-		return Script.Load(new java.io.ByteArrayInputStream(bytes, offset, length));
+		/** Decode the segment in place, no intermediate stream is built */
+		return new ScriptDecoder(java.nio.ByteBuffer.wrap(bytes, offset, length)).decode();
+	}
+	
+	/**
+	 * <i>Script::Load(java.nio.ByteBuffer)</i><br />
+	 * Reads the <i>first Script element</i> from the position of a buffer, which is
+	 * advanced past the element, so consecutive elements can be loaded one by one.
+	 * <br /><br />
+	 * Heap, direct and memory-mapped (<code>java.nio.MappedByteBuffer</code>) buffers
+	 * are decoded in place, the input is never copied onto the heap as a whole.
+	 * <br /><br />
+	 * Warning: <i>Truncated or malformed input throws RuntimeException and leaves the
+	 * position unchanged</i>.
+	 */
+	public final static Script Load(java.nio.ByteBuffer bytes) {
+		
+		ScriptDecoder decoder = new ScriptDecoder(bytes);
+		Script nativeScript = decoder.decode();
+		
+		/** Consume the decoded element */
+		bytes.position(bytes.position() + (int)decoder.offset());
+		return nativeScript;
+	}
+	
+	/**
+	 * <i>Script::Load(java.nio.file.Path)</i><br />
+	 * Reads the <i>first Script element</i> of a file, typically a snapshot written
+	 * by <code>passbytes()</code>.
+	 * <br /><br />
+	 * The file is memory-mapped read-only and decoded directly from the mapping,
+	 * one window at a time, so neither the file nor a copy of it is ever held on
+	 * the heap and snapshots larger than 2 GB can be loaded.
+	 * <br /><br />
+	 * Warning: <i>Truncated or malformed input throws RuntimeException</i>.
+	 */
+	public final static Script Load(java.nio.file.Path file) {
+		
+		try (java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(
+				file, java.nio.file.StandardOpenOption.READ)) {
+			return new ScriptDecoder(channel, 0).decode();
+		} catch (java.io.IOException e) {
+			throw ScriptDecoder.failure(e);
+		}
+	}
+	
+	/**
+	 * <i>Script::LazyLoad(byte[])</i><br />
+	 * Lazy deserialization of the <i>first Script element</i> of a byte array.
+	 * <br /><br />
+	 * A loaded Array or Object keeps its serialized slice and decodes its members only
+	 * when they are first accessed through index(int), mem(Object), keySet(), toString()
+	 * or any other operation on its storage. Nested Arrays and Objects stay lazy in turn,
+	 * so untouched subtrees are never allocated, and passbytes() copies them unchanged.
+	 * <br /><br />
+	 * Warning: <i>The array is referenced, not copied, and must not be modified while the
+	 * loaded Script is in use. The structure is checked when loading, truncated or
+	 * malformed input throws RuntimeException</i>.
+	 */
+	public final static Script LazyLoad(byte[] bytes) {
+		/** Internal relocation */
+		return Script.LazyLoad(java.nio.ByteBuffer.wrap(bytes));
+	}
+	
+	/**
+	 * <i>Script::LazyLoad(java.nio.ByteBuffer)</i><br />
+	 * Lazy deserialization of the <i>first Script element</i> from the position of a buffer,
+	 * which is advanced past the element. See <code>LazyLoad(byte[])</code>.
+	 * <br /><br />
+	 * Warning: <i>The buffer content is referenced, not copied, and must not be modified
+	 * while the loaded Script is in use</i>.
+	 */
+	public final static Script LazyLoad(java.nio.ByteBuffer bytes) {
+		
+		ScriptDecoder decoder = new ScriptDecoder(bytes, true);
+		Script nativeScript = decoder.decodeLazy();
+		
+		/** Consume the decoded element */
+		bytes.position(bytes.position() + (int)decoder.offset());
+		return nativeScript;
 	}
 	
 	/**
@@ -1099,24 +1582,22 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 		
 		/* Composite data types */
 		if (this.type == Type.Array) {				//Array parsing
-			@SuppressWarnings("unchecked")
-			java.util.Vector<Script> nativeArray = (java.util.Vector<Script>)this.script;
-			java.util.Iterator<Script> nativeArrayIterator = nativeArray.iterator();	//Obtaining iterators
+			ScriptArray nativeArray = this.nativeArray();
+			int size = nativeArray.size();
 			
-			nativeString.append('[');				//Parsing process
-			while (nativeArrayIterator.hasNext()) {
-				nativeString.append(nativeArrayIterator.next().toString());
-				if (nativeArrayIterator.hasNext()) {
+			nativeString.append('[');				//Parsing process, packed values are printed directly
+			for (int index = 0; index < size; index++) {
+				if (index != 0) {
 					nativeString.append(", ");
 				}
+				nativeArray.appendTo(nativeString, index);
 			}
 			nativeString.append(']');
 		}
 		
 		/* Composite data types */
 		if (this.type == Type.Object) {			//Object parsing
-			@SuppressWarnings("unchecked")
-			java.util.Map<Script, Script> nativeObject = (java.util.HashMap<Script, Script>)this.script;
+			java.util.Map<Script, Script> nativeObject = this.nativeObject();
 			/**
 			 * Get Entry iterator of Map
 			 * Native and Efficient Iteration Scheme
@@ -1177,72 +1658,47 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 		
 		/* For Array */
 		if (element.type == Type.Array) {
-			@SuppressWarnings("unchecked")
-			java.util.Vector<Script> nativeArray = (java.util.Vector<Script>)this.script;
-			@SuppressWarnings("unchecked")
-			java.util.Vector<Script> externArray = (java.util.Vector<Script>)element.script;
-			
-			/* Size comparison */
-			if (nativeArray.size() != externArray.size()) {
-				return false;
-			}
-			
-			int size = nativeArray.size();
-			/** Deep recursion */
-			for (int index = 0; index < size; index++) {
-				if (!nativeArray.get(index).equals(externArray.get(index))) {
-					return false;
-				}
-			}
-			return true;
+			/** Size comparison, then deep recursion; packed values are compared directly */
+			ScriptArray nativeArray = this.readArray();
+			ScriptArray externArray = element.readArray();
+			return nativeArray == externArray || nativeArray.contentEquals(externArray);
 		}
 		
 		/* For Object */
 		if (element.type == Type.Object) {
-			@SuppressWarnings("unchecked")
-			java.util.Map<Script, Script> nativeObject = (java.util.HashMap<Script, Script>)this.script;
-			@SuppressWarnings("unchecked")
-			java.util.Map<Script, Script> externObject = (java.util.HashMap<Script, Script>)element.script;
+			ScriptObject nativeObject = this.readObject();
+			ScriptObject externObject = element.readObject();
+			if (nativeObject == externObject) {
+				return true;
+			}
 			
-			java.util.Set<Script> checkedKeys = new java.util.HashSet<Script>();
 			/** Deep recursion */
-			Script nativeValue, externValue;
-			for (Script it : nativeObject.keySet()) {
+			int defined = 0;
+			Script externValue;
+			for (java.util.Map.Entry<Script, Script> nativeEntry : nativeObject.entrySet()) {
 				
 				/**
 				 * Traversing through its own properties to determine whether a defined
 				 * property has the same definition in the incoming object.
 				 */
-				if ((nativeValue = nativeObject.get(it)).type != Type.Undefined) {
+				if (nativeEntry.getValue().type != Type.Undefined) {
 					//Undefined equivalence to inequality
-					if ((externValue = externObject.get(it)) == null) {
+					if ((externValue = externObject.get(nativeEntry.getKey())) == null) {
 						return false;
 					}
 					
 					//To further determine whether the two are equal
-					if (!nativeValue.equals(externValue)) {
+					if (!nativeEntry.getValue().equals(externValue)) {
 						return false;
 					}
-					checkedKeys.add(it);						//Represents that a Key has been determined
+					defined++;
 				}
 			}
 			
-			/** Backward recursion */
-			for (Script it : externObject.keySet()) {
-				
-				/**
-				 * Skip keys that have been judged to be equal
-				 */
-				if (!checkedKeys.contains(it) && (externValue = externObject.get(it)).type != Type.Undefined) {
-					//Undefined equivalence to inequality
-					if ((nativeValue = nativeObject.get(it)) == null) {
-						return false;
-					}
-					
-					//To further determine whether the two are equal
-					if (!externValue.equals(nativeValue)) {
-						return false;
-					}
+			/** Every defined property matched: equal if the incoming object defines no other */
+			for (Script it : externObject.values()) {
+				if (it.type != Type.Undefined && --defined < 0) {
+					return false;
 				}
 			}
 			return true;
@@ -1285,7 +1741,7 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 		}
 		
 		/* For obj = int, boolean, String, other Objects */
-		return this.script.equals(obj);
+		return this.nativeData().equals(obj);
 	}
 	
 	@Override
@@ -1297,7 +1753,122 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 		if (this.type == Type.Null) {
 			return 0;
 		}
-		return this.script.hashCode();
+		
+		/** Read in place, the storages cache their structural hash */
+		if (this.type == Type.Array) {
+			return this.readArray().hashCode();
+		}
+		if (this.type == Type.Object) {
+			return this.readObject().hashCode();
+		}
+		return this.nativeData().hashCode();
+	}
+	
+	/**
+	 * <i>Script::compareTo(Script)</i><br />
+	 * Compares two Scripts in a total order over all the types. Types are ranked
+	 * first:
+	 * <br /><code>Undefined &lt; Null &lt; Boolean &lt; Number &lt; String &lt; Array &lt; Object &lt; Function &lt; Pointer</code><br />
+	 * then values of the same type are compared: false before true, Numbers by value,
+	 * Strings by their UTF-16 units as String::compareTo() does, Arrays element by
+	 * element and then by length, Objects by their number of members, then by their
+	 * sorted keys, then by their values in the order of the keys.
+	 * <br /><br />
+	 * The order is consistent with equals(), except that Undefined compares equal to
+	 * itself, and that Functions and Pointers that are not equal are ordered by class
+	 * name then identity hash, an order which only holds within one run.
+	 * <br />
+	 * <i>Object members of value Undefined are ignored, as equals() does</i>.
+	 */
+	@Override
+	public int compareTo(Script other) {
+		if (this == other) {
+			return 0;
+		}
+		if (this.type != other.type) {
+			return java.lang.Integer.compare(Script.rank(this.type), Script.rank(other.type));
+		}
+		switch (this.type) {
+		case Undefined:
+		case Null:
+			return 0;
+		case Boolean:
+			return java.lang.Boolean.compare((java.lang.Boolean)this.script, (java.lang.Boolean)other.script);
+		case Number:
+			return java.lang.Integer.compare((java.lang.Integer)this.script, (java.lang.Integer)other.script);
+		case String:
+			return ((java.lang.String)this.script).compareTo((java.lang.String)other.script);
+		case Array:
+			return this.readArray().compareContent(other.readArray());
+		case Object:
+			return Script.compareObjects(this.readObject(), other.readObject());
+		default:
+			return Script.compareNatives(this.script, other.script);
+		}
+	}
+	
+	/** Rank of a type in the order of compareTo() */
+	static int rank(Type type) {
+		switch (type) {
+		case Undefined: return 0;
+		case Null:      return 1;
+		case Boolean:   return 2;
+		case Number:    return 3;
+		case String:    return 4;
+		case Array:     return 5;
+		case Object:    return 6;
+		case Function:  return 7;
+		default:        return 8;
+		}
+	}
+	
+	/** Objects by number of defined members, then sorted keys, then values in key order */
+	private static int compareObjects(java.util.Map<Script, Script> nativeObject, java.util.Map<Script, Script> externObject) {
+		Script[] nativeKeys = Script.definedKeys(nativeObject);
+		Script[] externKeys = Script.definedKeys(externObject);
+		if (nativeKeys.length != externKeys.length) {
+			return java.lang.Integer.compare(nativeKeys.length, externKeys.length);
+		}
+		for (int index = 0; index < nativeKeys.length; index++) {
+			int compare = nativeKeys[index].compareTo(externKeys[index]);
+			if (compare != 0) return compare;
+		}
+		for (int index = 0; index < nativeKeys.length; index++) {
+			int compare = nativeObject.get(nativeKeys[index]).compareTo(externObject.get(externKeys[index]));
+			if (compare != 0) return compare;
+		}
+		return 0;
+	}
+	
+	/** The sorted keys of the members whose value is not Undefined */
+	private static Script[] definedKeys(java.util.Map<Script, Script> nativeObject) {
+		Script[] nativeKeys = new Script[nativeObject.size()];
+		int count = 0;
+		for (java.util.Map.Entry<Script, Script> nativeEntry : nativeObject.entrySet()) {
+			if (nativeEntry.getValue().type != Type.Undefined) {
+				nativeKeys[count++] = nativeEntry.getKey();
+			}
+		}
+		java.util.Arrays.sort(nativeKeys, 0, count);
+		return count == nativeKeys.length ? nativeKeys : java.util.Arrays.copyOf(nativeKeys, count);
+	}
+	
+	/** Functions and Pointers: equal entities, then their own order if any, then class name and identity hash */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static int compareNatives(java.lang.Object nativeData, java.lang.Object externData) {
+		if (nativeData == null || externData == null) {
+			return nativeData == externData ? 0 : nativeData == null ? -1 : 1;
+		}
+		if (nativeData.equals(externData)) {
+			return 0;
+		}
+		if (nativeData.getClass() != externData.getClass()) {
+			return nativeData.getClass().getName().compareTo(externData.getClass().getName());
+		}
+		if (nativeData instanceof java.lang.Comparable) {
+			return ((java.lang.Comparable)nativeData).compareTo(externData);
+		}
+		return java.lang.Integer.compare(java.lang.System.identityHashCode(nativeData), java.lang.System.identityHashCode(externData));
 	}
 	/**********************************************************/
 	
@@ -1536,48 +2107,46 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 	 * <i>Array::length()</i><br />
 	 * Get the length of an array.The array of Script is implemented with variable length.
 	 */
-	@SuppressWarnings("unchecked")
 	public final int length() {
 		this.checkUndefined("Array::length()");
 		this.checkType("Array::length()", Type.Array);
 		
-		return ((java.util.Vector<Script>)this.script).size();
+		return this.nativeArray().size();
 	}
 	
 	/**
-	 * <i>Array::checkIndex(int)</i><br />
-	 * Array subscript crossover checker.
-	 * The checker will operate on the absolute value subscripts and check the array
-	 * crossing the bounds. The checker returns the subscripts when checking, and
-	 * throws an exception instead.
+	 * <i>Array::synchronize()</i><br />
+	 * Makes each operation of the Array API on this Array thread-safe, and returns
+	 * this Array. Arrays are unsynchronized by default and cost no lock per call,
+	 * so this must be called before the Array is shared between threads.
+	 * <br /><br />
+	 * Warning: <i>Only single operations are atomic: a read followed by a write, or
+	 * iterating the Array, still needs external synchronization</i>.<br />
+	 * <i>Clones of a synchronized Array are not synchronized</i>.
 	 */
-	private int checkIndex(int get_index) {
-		int _size = this.length();
-		int calc_index = get_index < 0 ? get_index + _size : get_index;
-
-		if (calc_index < 0 || calc_index >= _size) {
-			throw new RuntimeException(
-				"ArrayIndexOutOfBoundsException\n\t" +
-				"index: " + get_index + ", the range of the Array is [0, " + (_size - 1) + "]"
-			);
+	public final Script synchronize() {
+		this.checkUndefined("Array::synchronize()");
+		this.checkType("Array::synchronize()", Type.Array);
+		
+		ScriptArray nativeArray = this.nativeArray();
+		if (!(nativeArray instanceof ScriptArray.Synchronized)) {
+			this.script = new ScriptArray.Synchronized(nativeArray);
 		}
-
-		return calc_index;
+		return this;
 	}
 	
 	/**
 	 * <i>Array::append(Object)</i><br />
 	 * Append a Script element to the end of the array.
 	 * <br /><br />
-	 * Warning: <i>This method is thread-safe</i>.<br />
+	 * Warning: <i>This method is thread-safe only on a synchronized Array</i>.<br />
 	 * <i>The element added by this method is a copy of the incoming object</i>.
 	 */
 	public final int append(Object object) {
 		this.checkUndefined("Array::append(Object)");
 		this.checkType("Array::append(Object)", Type.Array);
 		
-		@SuppressWarnings("unchecked")
-		java.util.Vector<Script> nativeArray = (java.util.Vector<Script>)this.script;
+		ScriptArray nativeArray = this.nativeArray();
 		nativeArray.add(new Script(object));
 		return nativeArray.size();
 	}
@@ -1587,15 +2156,56 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 	 * Gets the element (directly referenced) of the specified subscript in the array.
 	 * <br />
 	 * <i>Negative index can be addressable in reverse order</i>.
+	 * <br /><br />
+	 * Warning: <i>A packed Array (built from int[] or boolean[]) creates its element
+	 * Scripts here, use intValue(int) or booleanValue(int) to read values only</i>.
 	 */
 	public final Script index(int get_index) {
 		this.checkUndefined("Array::index(int)");
 		this.checkType("Array::index(int)", Type.Array);
 		
-		@SuppressWarnings("unchecked")
-		java.util.Vector<Script> nativeArray = (java.util.Vector<Script>)this.script;
-		int calc_index = this.checkIndex(get_index);
-		return nativeArray.get(calc_index);
+		/** Reverse addressing and bounds are checked in one step */
+		return this.nativeArray().at(get_index);
+	}
+	
+	/**
+	 * <i>Array::isDirect()</i><br />
+	 * Returns whether the Numbers of this Array are still held off the Java heap,
+	 * see <code>Script::DirectArray()</code>.
+	 */
+	public final boolean isDirect() {
+		this.checkUndefined("Array::isDirect()");
+		this.checkType("Array::isDirect()", Type.Array);
+		
+		return this.nativeArray().memory != null;
+	}
+	
+	/**
+	 * <i>Array::intValue(int)</i><br />
+	 * Gets the int entity of the Number at the specified subscript in the array,
+	 * without creating a reference to the element.
+	 * <br />
+	 * <i>Negative index can be addressable in reverse order</i>.
+	 */
+	public final int intValue(int get_index) {
+		this.checkUndefined("Array::intValue(int)");
+		this.checkType("Array::intValue(int)", Type.Array);
+		
+		return this.nativeArray().intAt(get_index);
+	}
+	
+	/**
+	 * <i>Array::booleanValue(int)</i><br />
+	 * Gets the boolean entity of the Boolean at the specified subscript in the array,
+	 * without creating a reference to the element.
+	 * <br />
+	 * <i>Negative index can be addressable in reverse order</i>.
+	 */
+	public final boolean booleanValue(int get_index) {
+		this.checkUndefined("Array::booleanValue(int)");
+		this.checkType("Array::booleanValue(int)", Type.Array);
+		
+		return this.nativeArray().booleanAt(get_index);
 	}
 	
 	/**
@@ -1608,19 +2218,24 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 		this.checkUndefined("Array::insert(int)");
 		this.checkType("Array::insert(int)", Type.Array);
 		
-		@SuppressWarnings("unchecked")
-		java.util.Vector<Script> nativeArray = (java.util.Vector<Script>)this.script;
-		int calc_index = this.checkIndex(insert_index);
-		nativeArray.add(calc_index, new Script(object));
+		ScriptArray nativeArray = this.nativeArray();
+		nativeArray.insertAt(insert_index, new Script(object));
 		return nativeArray.size();
 	}
 	
+	/**
+	 * <i>Array::set(int, Object)</i><br />
+	 * Replaces the element at an existing subscript with a new element of the given
+	 * seed, and returns the element replaced.
+	 * <br />
+	 * <i>Negative index can be addressable in reverse order</i>.
+	 */
 	public final Script set(int set_index, Object object) {
-		//同步的置数函数
-		@SuppressWarnings("unchecked")
-		java.util.Vector<Script> nativeArray = (java.util.Vector<Script>)this.script;
+		this.checkUndefined("Array::set(int, Object)");
+		this.checkType("Array::set(int, Object)", Type.Array);
 		
-		return nativeArray.set(set_index, new Script(object));
+		ScriptArray nativeArray = this.nativeArray();
+		return nativeArray.set(nativeArray.resolve(set_index), new Script(object));
 	}
 	
 	/**
@@ -1628,20 +2243,171 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 	 * Removing elements at specified positions in an array causes elements
 	 * to merge forward after removal, resulting in lower efficiency.
 	 * <br /><br />
-	 * Warning: <i>This method is thread-safe</i>.<br />
+	 * Warning: <i>This method is thread-safe only on a synchronized Array</i>.<br />
 	 * <i>Negative index can be addressable in reverse order</i>.
 	 */
 	public final int remove(int remove_index) {
 		this.checkUndefined("Array::remove(int)");
 		this.checkType("Array::remove(int)", Type.Array);
 		
-		@SuppressWarnings("unchecked")
-		java.util.Vector<Script> nativeArray = (java.util.Vector<Script>)this.script;
-		int calc_index = this.checkIndex(remove_index);
-		nativeArray.remove(calc_index);
+		ScriptArray nativeArray = this.nativeArray();
+		nativeArray.removeAt(remove_index);
 		return nativeArray.size();
 	}
 	
+	/**
+	 * <i>Array::appendAll(Object)</i><br />
+	 * Appends all the elements of a source to the end of the array at once.
+	 * The source may be a Script Array, an int[], boolean[] or Object[] array, or a
+	 * java.util.Collection; each element is copied as by append(Object).
+	 * <br /><br />
+	 * <i>Appending an int[] or boolean[] to an Array packed the same way keeps it packed</i>.
+	 */
+	public final int appendAll(Object source) {
+		this.checkUndefined("Array::appendAll(Object)");
+		this.checkType("Array::appendAll(Object)", Type.Array);
+		
+		ScriptArray nativeArray = this.nativeArray();
+		nativeArray.addAll(nativeArray.size(), Script.copyAll("Array::appendAll(Object)", source));
+		return nativeArray.size();
+	}
+	
+	/**
+	 * <i>Array::insertAll(int, Object)</i><br />
+	 * Inserts all the elements of a source before the specified subscript, moving
+	 * the following elements once. The sources accepted are those of appendAll(Object).
+	 * <br />
+	 * <i>Negative index can be addressable in reverse order, the length of the Array
+	 * is a valid subscript</i>.
+	 */
+	public final int insertAll(int insert_index, Object source) {
+		this.checkUndefined("Array::insertAll(int, Object)");
+		this.checkType("Array::insertAll(int, Object)", Type.Array);
+		
+		ScriptArray nativeArray = this.nativeArray();
+		nativeArray.addAll(insert_index, Script.copyAll("Array::insertAll(int, Object)", source));
+		return nativeArray.size();
+	}
+	
+	/**
+	 * <i>Array::slice(int, int)</i><br />
+	 * Returns a new Array holding copies of the elements in the range [from, to).
+	 * <br />
+	 * <i>Negative bounds count from the end, a range outside the Array throws</i>.
+	 */
+	public final Script slice(int from, int to) {
+		this.checkUndefined("Array::slice(int, int)");
+		this.checkType("Array::slice(int, int)", Type.Array);
+		
+		ScriptArray nativeSlice = this.nativeArray().copyRange(from, to);
+		if (nativeSlice.elements != null) {
+			Script[] nativeElements = nativeSlice.elements;
+			for (int index = 0; index < nativeSlice.size; index++) {
+				nativeElements[index] = new Script(nativeElements[index]);
+			}
+		}
+		return new Script(nativeSlice, Type.Array);
+	}
+	
+	/**
+	 * <i>Array::splice(int, int, Object...)</i><br />
+	 * Removes count elements from the specified subscript, inserts copies of the given
+	 * objects in their place, and returns the removed elements as a new Array.
+	 * <br />
+	 * <i>Negative index can be addressable in reverse order</i>.
+	 */
+	public final Script splice(int splice_index, int count, Object... objects) {
+		this.checkUndefined("Array::splice(int, int, Object...)");
+		this.checkType("Array::splice(int, int, Object...)", Type.Array);
+		
+		ScriptArray nativeArray = this.nativeArray();
+		if (count < 0) {
+			throw new RuntimeException(
+					"IllegalArgumentException\n\t" +
+					"Array::splice(int, int, Object...) cannot remove " + count + " elements"
+			);
+		}
+		
+		/** The index is resolved once, the removed range is checked as a whole */
+		int from = splice_index < 0 ? splice_index + nativeArray.size() : splice_index;
+		if (from < 0) {
+			throw ScriptArray.outOfBounds(splice_index, nativeArray.size());
+		}
+		ScriptArray removed = nativeArray.cut(from, from + count);
+		if (objects != null && objects.length > 0) {
+			nativeArray.addAll(from, Script.copyAll("Array::splice(int, int, Object...)", objects));
+		}
+		return new Script(removed, Type.Array);
+	}
+	
+	/**
+	 * <i>Array::concat(Object...)</i><br />
+	 * Returns a new Array holding copies of the elements of this Array followed by
+	 * those of each source, as accepted by appendAll(Object). This Array is unchanged.
+	 */
+	public final Script concat(Object... sources) {
+		this.checkUndefined("Array::concat(Object...)");
+		this.checkType("Array::concat(Object...)", Type.Array);
+		
+		Script concat = new Script(this);
+		if (sources != null) {
+			for (int index = 0; index < sources.length; index++) {
+				concat.appendAll(sources[index]);
+			}
+		}
+		return concat;
+	}
+	
+	/**
+	 * <i>Array::subarray(int, int)</i><br />
+	 * Returns an Array over the range [from, to) of this Array without copying
+	 * anything: both Arrays share their storage until either one is structurally
+	 * changed (set, insert, remove, clean...), which gives it a private copy.
+	 * <br />
+	 * <i>Negative bounds count from the end, a range outside the Array throws</i>.
+	 * <br /><br />
+	 * Warning: <i>The element Scripts themselves are shared for good, changing the
+	 * value of an element through one Array is seen through the other</i>.
+	 */
+	public final Script subarray(int from, int to) {
+		this.checkUndefined("Array::subarray(int, int)");
+		this.checkType("Array::subarray(int, int)", Type.Array);
+		
+		return new Script(this.nativeArray().share(from, to), Type.Array);
+	}
+	
+	/** Copies the elements of a bulk source into a new storage */
+	private static ScriptArray copyAll(java.lang.String caller, java.lang.Object source) {
+		if (source instanceof Script && ((Script)source).type == Type.Array) {
+			/** The source is copied before anything moves, so an Array may be added to itself */
+			return new Script(source).nativeArray();
+		}
+		if (source instanceof int[] || source instanceof boolean[] || source instanceof java.lang.String[]) {
+			return new Script(source).nativeArray();
+		}
+		if (source instanceof java.lang.Object[]) {
+			java.lang.Object[] nativeSource = (java.lang.Object[])source;
+			ScriptArray nativeArray = new ScriptArray(nativeSource.length);
+			for (int index = 0; index < nativeSource.length; index++) {
+				nativeArray.add(new Script(nativeSource[index]));
+			}
+			return nativeArray;
+		}
+		if (source instanceof java.util.Collection) {
+			java.util.Collection<?> nativeSource = (java.util.Collection<?>)source;
+			ScriptArray nativeArray = new ScriptArray(nativeSource.size());
+			for (java.lang.Object element : nativeSource) {
+				nativeArray.add(new Script(element));
+			}
+			return nativeArray;
+		}
+		throw new RuntimeException(
+				"IllegalArgumentException\n\t" +
+				caller + " cannot take its elements from " +
+				(source instanceof Script ? ((Script)source).typeof() : source == null ? "null" : source.getClass().getName())
+		);
+	}
+	
 	/**
 	 * <i>Array::toArray()</i><br />
 	 * Converting all elements of an Array into the form of an array.
@@ -1654,15 +2420,10 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 		//Check the validity of Script element types
 		this.checkType("Array::toArray()", Type.Array);
 
-		@SuppressWarnings("unchecked")
-		java.util.Vector<Script> nativeArray = (java.util.Vector<Script>)this.script;
-		
-		Object[] objectArrays = nativeArray.toArray();
-		Script[] scriptArrays = new Script[objectArrays.length];
-		for (int index = 0; index < objectArrays.length; index++) {
-			scriptArrays[index] = (Script)objectArrays[index];
-		}
-		return scriptArrays;
+		/** The copy is typed already, no per-element cast */
+		ScriptArray nativeArray = this.nativeArray();
+		nativeArray.expose();
+		return nativeArray.toArray();
 	}
 	
 	/**
@@ -1676,15 +2437,8 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 		 * Array:: void: { remove Undefined item () }
 		 * Delete the Undefined element in Array and the spaces will be merged.
 		 */
-		@SuppressWarnings("unchecked")
-		java.util.Vector<Script> nativeArray = (java.util.Vector<Script>)this.script;
-		
-		for (int index = 0; index < nativeArray.size(); index++) {
-			if (nativeArray.get(index).type == Type.Undefined) {
-				nativeArray.remove(index);
-				index--;
-			}
-		}
+		/** One pass, and none at all when no Undefined element can be there */
+		this.nativeArray().compact();
 	}
 	
 	/**
@@ -1698,46 +2452,424 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 		 * Array:: void: { Clear this array () }
 		 * Clear this array.
 		 */
-		@SuppressWarnings("unchecked")
-		java.util.Vector<Script> nativeArray = (java.util.Vector<Script>)this.script;
+		ScriptArray nativeArray = this.nativeArray();
 		nativeArray.clear();
 	}
 	
 	/****************   Functional function    ****************/
 	
 	public final int push(Object object) {
-		this.append(object);
-		return this.length();
+		return this.append(object);
 	}
 	
 	public final Script pop() {
 		return this.pop(-1);
 	}
 	
+	/**
+	 * <i>Array::pop(int)</i><br />
+	 * Removes the element at the specified subscript and returns it, the index is
+	 * resolved and checked once.
+	 */
 	public final Script pop(int pop_index) {
-		Script element = this.index(pop_index);
-		this.remove(pop_index);
-		return element;
+		this.checkUndefined("Array::pop(int)");
+		this.checkType("Array::pop(int)", Type.Array);
+		
+		return this.nativeArray().removeAt(pop_index);
 	}
 	
 	public final Script top() {
 		return this.index(-1);
 	}
 	
+	/**
+	 * <i>Array::unshift(Object)</i><br />
+	 * Insert a Script element at the front of the array.
+	 * <br /><br />
+	 * <i>The first front insertion opens free room before the elements, after
+	 * which unshift() and shift() run in amortized constant time</i>.
+	 */
 	public final int unshift(Object object) {
-		int _size = this.length();
-		if (_size == 0) {
-			this.append(object);
-		} else {
-			this.insert(0, object);
-		}
-		return _size + 1;
+		this.checkUndefined("Array::unshift(Object)");
+		this.checkType("Array::unshift(Object)", Type.Array);
+		
+		ScriptArray nativeArray = this.nativeArray();
+		nativeArray.add(0, new Script(object));
+		return nativeArray.size();
 	}
 	
+	/**
+	 * <i>Array::shift()</i><br />
+	 * Removes the first element of the array and returns it, the other elements
+	 * are not moved.
+	 */
 	public final Script shift() {
-		Script element = this.index(0);
-		this.remove(0);
-		return element;
+		this.checkUndefined("Array::shift()");
+		this.checkType("Array::shift()", Type.Array);
+		
+		return this.nativeArray().removeAt(0);
+	}
+	
+	/****************    Ordering function     ****************/
+	
+	/**
+	 * <i>Array::sort()</i><br />
+	 * Sorts the elements in place in the order of <code>Script::compareTo()</code>,
+	 * and returns this Array. Arrays of Numbers or Booleans built packed stay packed
+	 * and are sorted as primitive values.
+	 */
+	public final Script sort() {
+		this.checkUndefined("Array::sort()");
+		this.checkType("Array::sort()", Type.Array);
+		
+		this.nativeArray().sortNatural(false);
+		return this;
+	}
+	
+	/**
+	 * <i>Array::parallelSort()</i><br />
+	 * sort() merging sorted chunks on the common ForkJoinPool.
+	 */
+	public final Script parallelSort() {
+		this.checkUndefined("Array::parallelSort()");
+		this.checkType("Array::parallelSort()", Type.Array);
+		
+		this.nativeArray().sortNatural(true);
+		return this;
+	}
+	
+	/**
+	 * <i>Array::binarySearch(Object)</i><br />
+	 * Searches a sorted Array for a value in O(log n) steps, and returns its index,
+	 * or (-(insertion index) - 1) if the value is not there, as Arrays.binarySearch()
+	 * does. Of several equal elements, any one may be found.
+	 * <br /><br />
+	 * Warning: <i>The Array must be sorted in the order of compareTo(), by sort() or
+	 * in sorted mode, the result is undefined otherwise</i>.
+	 */
+	public final int binarySearch(Object object) {
+		this.checkUndefined("Array::binarySearch(Object)");
+		this.checkType("Array::binarySearch(Object)", Type.Array);
+		
+		/** The key is only compared, a Script is used as it is */
+		Script key = object instanceof Script ? (Script)object : new Script(object);
+		return this.nativeArray().search(key);
+	}
+	
+	/**
+	 * <i>Array::sorted()</i><br />
+	 * Sorts this Array and puts it in sorted mode, and returns it. In sorted mode,
+	 * append(), push() and appendAll() add the elements at their ordered position
+	 * (after equal ones), so the Array stays sorted and binarySearch() stays valid.
+	 * <br /><br />
+	 * Warning: <i>Writes at a given position (set, insert, unshift, sort with a comparator,
+	 * insertAll or splice before the end) end sorted mode. Changing the value of an element through
+	 * its reference is not noticed and breaks the order</i>.<br />
+	 * <i>Clones of an Array in sorted mode are not in sorted mode</i>.
+	 */
+	public final Script sorted() {
+		this.checkUndefined("Array::sorted()");
+		this.checkType("Array::sorted()", Type.Array);
+		
+		this.nativeArray().keepSorted();
+		return this;
+	}
+	
+	/**
+	 * <i>Array::isSorted()</i><br />
+	 * Returns whether this Array is in sorted mode.
+	 */
+	public final boolean isSorted() {
+		this.checkUndefined("Array::isSorted()");
+		this.checkType("Array::isSorted()", Type.Array);
+		
+		return this.nativeArray().isSorted();
+	}
+	
+	/****************   Higher-order function    ****************/
+	
+	/**
+	 * <i>Array::map(Functional)</i><br />
+	 * Returns a new Array holding copies of the results of the function called on
+	 * each element (directly referenced, or by value if the Array is packed), in
+	 * order. A null result becomes Null.
+	 * <pre>
+	 *     Script doubled = array.map((Object... e) -> Script.Number(((Script)e[0]).intValue() * 2));
+	 * </pre>
+	 */
+	public final Script map(Functional functional) {
+		return this.map("Array::map(Functional)", functional, null);
+	}
+	
+	/**
+	 * <i>Array::parallelMap(Functional)</i><br />
+	 * map() on the common ForkJoinPool. Short Arrays are mapped on the calling thread.
+	 * <br /><br />
+	 * Warning: <i>The function runs on several threads at once, and the Array must
+	 * not be modified meanwhile</i>.
+	 */
+	public final Script parallelMap(Functional functional) {
+		return this.map("Array::parallelMap(Functional)", functional, java.util.concurrent.ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * <i>Array::filter(Functional)</i><br />
+	 * Returns a new Array holding copies of the elements for which the function
+	 * returns a true value, in order. Null, Undefined, false, 0 and the empty String
+	 * are false, anything else is true.
+	 */
+	public final Script filter(Functional functional) {
+		return this.filter("Array::filter(Functional)", functional, null);
+	}
+	
+	/**
+	 * <i>Array::parallelFilter(Functional)</i><br />
+	 * filter() on the common ForkJoinPool, the order of the elements is kept.
+	 */
+	public final Script parallelFilter(Functional functional) {
+		return this.filter("Array::parallelFilter(Functional)", functional, java.util.concurrent.ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * <i>Array::reduce(Functional)</i><br />
+	 * Folds the elements from the left, calling the function on the accumulated
+	 * value and the next element, the first element being the starting value.
+	 * <br />
+	 * <i>Reducing an empty Array without a starting value throws</i>.
+	 */
+	public final Script reduce(Functional functional) {
+		return this.reduce("Array::reduce(Functional)", functional, null, false, null);
+	}
+	
+	/**
+	 * <i>Array::reduce(Functional, Object)</i><br />
+	 * Folds the elements from the left, starting from a copy of the given value.
+	 */
+	public final Script reduce(Functional functional, Object initial) {
+		return this.reduce("Array::reduce(Functional, Object)", functional, initial, true, null);
+	}
+	
+	/**
+	 * <i>Array::parallelReduce(Functional)</i><br />
+	 * reduce() on the common ForkJoinPool: chunks are folded on their own, then
+	 * their results are folded in order.
+	 * <br /><br />
+	 * Warning: <i>The result equals that of reduce() only if the function is
+	 * associative, as a sum or a maximum</i>.
+	 */
+	public final Script parallelReduce(Functional functional) {
+		return this.reduce("Array::parallelReduce(Functional)", functional, null, false,
+				java.util.concurrent.ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * <i>Array::parallelReduce(Functional, Object)</i><br />
+	 * reduce(Functional, Object) on the common ForkJoinPool, the starting value is
+	 * folded in once, before the result of the elements.
+	 */
+	public final Script parallelReduce(Functional functional, Object initial) {
+		return this.reduce("Array::parallelReduce(Functional, Object)", functional, initial, true,
+				java.util.concurrent.ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * <i>Array::each(Functional)</i><br />
+	 * Calls the function on each element (directly referenced, a packed Array is
+	 * unpacked first), in order, and returns this Array.
+	 * <br />
+	 * <i>Named each since forEach(Consumer) is inherited from java.lang.Iterable,
+	 * and a lambda would match both</i>.
+	 */
+	public final Script each(Functional functional) {
+		return this.each("Array::each(Functional)", functional, null);
+	}
+	
+	/**
+	 * <i>Array::parallelEach(Functional)</i><br />
+	 * each() on the common ForkJoinPool, the elements are visited in no given order.
+	 */
+	public final Script parallelEach(Functional functional) {
+		return this.each("Array::parallelEach(Functional)", functional, java.util.concurrent.ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * <i>Array::sort(Functional)</i><br />
+	 * Sorts the elements in place with a comparator function, which is called on two
+	 * elements and returns a negative, zero or positive Number. The sort is stable.
+	 * Returns this Array.
+	 */
+	public final Script sort(Functional functional) {
+		return this.sort("Array::sort(Functional)", functional, false);
+	}
+	
+	/**
+	 * <i>Array::parallelSort(Functional)</i><br />
+	 * sort(Functional) merging sorted chunks on the common ForkJoinPool, still stable.
+	 */
+	public final Script parallelSort(Functional functional) {
+		return this.sort("Array::parallelSort(Functional)", functional, true);
+	}
+	
+	/**
+	 * <i>Array::find(Functional)</i><br />
+	 * Returns the first element (directly referenced, or a new Number or Boolean if
+	 * the Array is packed) for which the function returns a true value, or Undefined
+	 * if there is none. The search stops there.
+	 */
+	public final Script find(Functional functional) {
+		return this.find("Array::find(Functional)", functional, null);
+	}
+	
+	/**
+	 * <i>Array::parallelFind(Functional)</i><br />
+	 * find() on the common ForkJoinPool, still returning the first element found
+	 * in order. Chunks beyond an element already found stop early.
+	 */
+	public final Script parallelFind(Functional functional) {
+		return this.find("Array::parallelFind(Functional)", functional, java.util.concurrent.ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * <i>Array::some(Functional)</i><br />
+	 * Returns whether the function returns a true value for at least one element,
+	 * stopping at the first one.
+	 */
+	public final boolean some(Functional functional) {
+		return this.search("Array::some(Functional)", functional, true, null) >= 0;
+	}
+	
+	/**
+	 * <i>Array::parallelSome(Functional)</i><br />
+	 * some() on the common ForkJoinPool.
+	 */
+	public final boolean parallelSome(Functional functional) {
+		return this.search("Array::parallelSome(Functional)", functional, true,
+				java.util.concurrent.ForkJoinPool.commonPool()) >= 0;
+	}
+	
+	/**
+	 * <i>Array::every(Functional)</i><br />
+	 * Returns whether the function returns a true value for all the elements,
+	 * stopping at the first one it does not. An empty Array returns true.
+	 */
+	public final boolean every(Functional functional) {
+		return this.search("Array::every(Functional)", functional, false, null) < 0;
+	}
+	
+	/**
+	 * <i>Array::parallelEvery(Functional)</i><br />
+	 * every() on the common ForkJoinPool.
+	 */
+	public final boolean parallelEvery(Functional functional) {
+		return this.search("Array::parallelEvery(Functional)", functional, false,
+				java.util.concurrent.ForkJoinPool.commonPool()) < 0;
+	}
+	
+	/** map() on the calling thread if the pool is null */
+	private final Script map(java.lang.String caller, Functional functional, java.util.concurrent.ForkJoinPool pool) {
+		ScriptArray nativeArray = this.checkFunctional(caller, functional);
+		int from = nativeArray.head;
+		int to = from + nativeArray.size;
+		
+		Script[] results = ScriptTasks.map(nativeArray, from, to, functional, pool);
+		return new Script(new ScriptArray(results, results.length), Type.Array);
+	}
+	
+	/** filter() on the calling thread if the pool is null */
+	private final Script filter(java.lang.String caller, Functional functional, java.util.concurrent.ForkJoinPool pool) {
+		ScriptArray nativeArray = this.checkFunctional(caller, functional);
+		int from = nativeArray.head;
+		int to = from + nativeArray.size;
+		
+		/** The tests may run in parallel, the kept elements are gathered in order */
+		boolean[] kept = ScriptTasks.test(nativeArray, from, to, functional, pool);
+		ScriptArray results = new ScriptArray();
+		for (int index = 0; index < kept.length; index++) {
+			if (kept[index]) {
+				results.add(new Script(nativeArray.valueAt(from + index)));
+			}
+		}
+		return new Script(results, Type.Array);
+	}
+	
+	/** reduce() on the calling thread if the pool is null */
+	private final Script reduce(java.lang.String caller, Functional functional, java.lang.Object initial,
+			boolean seeded, java.util.concurrent.ForkJoinPool pool) {
+		ScriptArray nativeArray = this.checkFunctional(caller, functional);
+		int from = nativeArray.head;
+		int to = from + nativeArray.size;
+		
+		if (from == to) {
+			if (!seeded) {
+				throw new RuntimeException(
+						"IllegalFunctionInvocationException\n\t" +
+						caller + " method cannot be invoked on an empty Array without a starting value"
+				);
+			}
+			return new Script(initial);
+		}
+		Script result = ScriptTasks.fold(nativeArray, from, to, functional, pool);
+		return seeded ? ScriptTasks.nonNull(functional.run(new Script(initial), result)) : result;
+	}
+	
+	/** each() on the calling thread if the pool is null */
+	private final Script each(java.lang.String caller, Functional functional, java.util.concurrent.ForkJoinPool pool) {
+		ScriptArray nativeArray = this.checkFunctional(caller, functional);
+		if (nativeArray.memory == null) {
+			nativeArray.unpacked();					//each() hands out live elements
+		}
+		int from = nativeArray.head;
+		
+		ScriptTasks.each(nativeArray, from, from + nativeArray.size, functional, pool);
+		return this;
+	}
+	
+	/** sort() in place, in parallel or not */
+	private final Script sort(java.lang.String caller, Functional functional, boolean parallel) {
+		ScriptArray nativeArray = this.checkFunctional(caller, functional);
+		nativeArray.sort(ScriptTasks.comparator(functional), parallel);
+		return this;
+	}
+	
+	/** find() on the calling thread if the pool is null */
+	private final Script find(java.lang.String caller, Functional functional, java.util.concurrent.ForkJoinPool pool) {
+		int found = this.search(caller, functional, true, pool);
+		if (found < 0) {
+			return Script.Undefined();
+		}
+		ScriptArray nativeArray = this.nativeArray();
+		return nativeArray.valueAt(nativeArray.head + found);
+	}
+	
+	/** Returns the index of the first element of the given truth, or -1 */
+	private final int search(java.lang.String caller, Functional functional, boolean expected,
+			java.util.concurrent.ForkJoinPool pool) {
+		ScriptArray nativeArray = this.checkFunctional(caller, functional);
+		int from = nativeArray.head;
+		
+		int found = ScriptTasks.search(nativeArray, from, from + nativeArray.size, functional, expected, pool);
+		return found < 0 ? -1 : found - from;
+	}
+	
+	/**
+	 * Checks a higher-order call and returns the Array storage, whose elements are
+	 * handed to the function by reference. A packed or direct storage is read in
+	 * place: its elements are passed as new Numbers or Booleans, as index() returns them.
+	 */
+	private final ScriptArray checkFunctional(java.lang.String caller, Functional functional) {
+		this.checkUndefined(caller);
+		this.checkType(caller, Type.Array);
+		if (functional == null) {
+			throw new RuntimeException(
+					"IllegalArgumentException\n\t" +
+					caller + " requires a function"
+			);
+		}
+		ScriptArray nativeArray = this.nativeArray();
+		if (nativeArray.elements != null) {
+			nativeArray.expose();
+		}
+		return nativeArray;
 	}
 	
 	/**********************************************************/
@@ -1754,15 +2886,13 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 			return false;
 		}
 		if (key.type == Type.Array) {
-			@SuppressWarnings("unchecked")
-			java.util.Vector<Script> nativeArray = (java.util.Vector<Script>)key.script;
-			for (Script it : nativeArray) {
-				if (!Script.checkKeyType(it)) return false;
+			ScriptArray nativeArray = key.nativeArray();
+			for (int index = 0; nativeArray.elements != null && index < nativeArray.size(); index++) {
+				if (!Script.checkKeyType(nativeArray.get(index))) return false;		//Packed values are valid keys
 			}
 		}
 		if (key.type == Type.Object) {
-			@SuppressWarnings("unchecked")
-			java.util.Map<Script, Script> nativeObject = (java.util.Map<Script, Script>)key.script;
+			java.util.Map<Script, Script> nativeObject = key.nativeObject();
 			java.util.Iterator<java.util.Map.Entry<Script, Script>> nativeObjectIterator = nativeObject.entrySet().iterator();
 			while (nativeObjectIterator.hasNext()) {
 				if (!Script.checkKeyType(nativeObjectIterator.next().getValue())) return false;
@@ -1783,7 +2913,14 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 		this.checkUndefined("Object::mem(Object)");
 		this.checkType("Object::mem(Object)", Type.Object);
 		
-		Script objectKey = new Script(key);
+		if (key instanceof java.lang.String) {
+			return this.mem((java.lang.String)key);
+		}
+		if (key instanceof java.lang.Integer) {
+			return this.mem(((java.lang.Integer)key).intValue());
+		}
+		
+		Script objectKey = key instanceof Script ? (Script)key : new Script(key);
 		if (!checkKeyType(objectKey)) {
 			throw new RuntimeException(
 					"Key Script " + objectKey + " cannot be an Object key"
@@ -1792,16 +2929,187 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 		
 		/**
 		 * Object:: Script: { Accessing Elements in Object (Script key) }
-		 * Accessing Elements in Object by using Script key
+		 * Accessing Elements in Object by using Script key, looked up as it is
 		 */
-		@SuppressWarnings("unchecked")
-		java.util.Map<Script, Script> nativeObject = (java.util.Map<Script, Script>)this.script;
+		ScriptObject nativeObject = this.nativeObject();
+		Script value = nativeObject.get(objectKey);
+		
+		if (value == null) {
+			/** The slot joins the Object only once something is assigned to it, under a copy of the key */
+			return this.slot(nativeObject, objectKey == key ? new Script(objectKey) : objectKey);
+		}
+		
+		nativeObject.expose();
+		return value;
+	}
+	
+	/**
+	 * <i>Object::mem(String)</i><br />
+	 * Addressing a value in a Script object with a String key, as mem(Object) does,
+	 * without making a Script of the key unless the member is missing.
+	 */
+	public Script mem(java.lang.String key) {
+		this.checkUndefined("Object::mem(String)");
+		this.checkType("Object::mem(String)", Type.Object);
+		
+		if (key == null) {
+			return this.mem((Object)null);			//Script.Null key
+		}
+		
+		ScriptObject nativeObject = this.nativeObject();
+		Script value = nativeObject.find(key);
+		
+		if (value == null) {
+			return this.slot(nativeObject, new Script(key, Type.String));
+		}
 		
-		if (!nativeObject.containsKey(objectKey)) {
-			nativeObject.put(objectKey, Script.Undefined());
+		nativeObject.expose();
+		return value;
+	}
+	
+	/**
+	 * <i>Object::mem(int)</i><br />
+	 * Addressing a value in a Script object with a Number key, as mem(Object) does,
+	 * without making a Script of the key unless the member is missing.
+	 */
+	public Script mem(int key) {
+		this.checkUndefined("Object::mem(int)");
+		this.checkType("Object::mem(int)", Type.Object);
+		
+		ScriptObject nativeObject = this.nativeObject();
+		Script value = nativeObject.find(key);
+		
+		if (value == null) {
+			return this.slot(nativeObject, new Script(java.lang.Integer.valueOf(key), Type.Number));
+		}
+		
+		nativeObject.expose();
+		return value;
+	}
+	
+	/**
+	 * Returns the slot of a missing key: the same one for every mem() of the key,
+	 * until something is assigned to it or the key is added otherwise.
+	 */
+	private final Script slot(ScriptObject nativeObject, Script key) {
+		Script slot = nativeObject.pending(key);
+		if (slot == null) {
+			slot = new Script(new Pending(this, key), Type.Undefined);
+			nativeObject.hold(key, slot);
+		}
+		return slot;
+	}
+	
+	/**
+	 * <i>Object::get(Object)</i><br />
+	 * Reads the value of a key in the current Script Object, without adding the
+	 * key to it: a missing key reads as a new Script.Undefined.
+	 * <br /><br />
+	 * Unlike mem(Object), the key is not checked, since an illegal key is never
+	 * found anyway.
+	 */
+	public Script get(Object key) {
+		this.checkUndefined("Object::get(Object)");
+		this.checkType("Object::get(Object)", Type.Object);
+		
+		ScriptObject nativeObject = this.nativeObject();
+		Script value = Script.lookup(nativeObject, key);
+		if (value == null) {
+			return Script.Undefined();
+		}
+		
+		nativeObject.expose();
+		return value;
+	}
+	
+	/**
+	 * <i>Object::has(Object)</i><br />
+	 * Returns whether the current Script Object holds a value other than
+	 * Undefined for the key. Nothing is added to the Object.
+	 */
+	public boolean has(Object key) {
+		this.checkUndefined("Object::has(Object)");
+		this.checkType("Object::has(Object)", Type.Object);
+		
+		Script value = Script.lookup(this.readObject(), key);
+		return value != null && value.type != Type.Undefined;
+	}
+	
+	/**
+	 * <i>Object::getOrDefault(Object, Object)</i><br />
+	 * Reads the value of a key in the current Script Object, or the default value
+	 * (made a Script if it is not one) when the key is missing or Undefined.
+	 * Nothing is added to the Object.
+	 */
+	public Script getOrDefault(Object key, Object defaultValue) {
+		this.checkUndefined("Object::getOrDefault(Object, Object)");
+		this.checkType("Object::getOrDefault(Object, Object)", Type.Object);
+		
+		ScriptObject nativeObject = this.nativeObject();
+		Script value = Script.lookup(nativeObject, key);
+		if (value == null || value.type == Type.Undefined) {
+			return defaultValue instanceof Script ? (Script)defaultValue : new Script(defaultValue);
+		}
+		
+		nativeObject.expose();
+		return value;
+	}
+	
+	/** Looks a key up, String and int keys without making a Script of them */
+	private static Script lookup(ScriptObject nativeObject, Object key) {
+		if (key instanceof java.lang.String) {
+			return nativeObject.find((java.lang.String)key);
+		}
+		if (key instanceof java.lang.Integer) {
+			return nativeObject.find(((java.lang.Integer)key).intValue());
+		}
+		return nativeObject.get(key instanceof Script ? (Script)key : new Script(key));
+	}
+	
+	/**
+	 * Class {@code Script.Pending} is the storage of the Undefined slot returned by
+	 * mem(Object) for a missing key, the same slot for every mem() of the key while
+	 * it is pending. Assigning the slot adds it to its Object under the key; a slot
+	 * never assigned, or assigned Undefined, leaves the Object as it was and stays
+	 * pending. If the key was added in the meantime, the value is assigned to that
+	 * member.
+	 */
+	static final class Pending {
+		
+		/** Object element the slot belongs to */
+		private final Script owner;
+		
+		/** Key of the slot */
+		private final Script key;
+		
+		Pending(Script owner, Script key) {
+			this.owner = owner;
+			this.key = key;
 		}
 		
-		return nativeObject.get(objectKey);
+		/** Assigns the slot, then adds it to its Object if it is still one */
+		Script settle(Script slot, java.lang.Object value) {
+			slot.script = null;
+			slot.let(value);
+			if (slot.type == Type.Undefined) {
+				slot.script = this;					//Still missing from the Object
+				return slot;
+			}
+			if (this.owner.type != Type.Object) {
+				return slot;
+			}
+			
+			/** The member is written outside the storage from now on, by whoever holds the slot */
+			ScriptObject nativeObject = this.owner.nativeObject();
+			nativeObject.expose();
+			Script member = nativeObject.get(this.key);
+			if (member != null) {
+				member.let(value);					//The key was added otherwise in the meantime
+			} else {
+				nativeObject.put(this.key, slot);
+			}
+			return slot;
+		}
 	}
 	
 	/**
@@ -1812,7 +3120,6 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 	 * Object may cause the iterator to fail.</i><br />
 	 * Specially, this method may return keys with the corresponding value of Undefined type.
 	 */
-	@SuppressWarnings("unchecked")
 	public java.util.Set<Script> keySet() {
 		this.checkUndefined("Object::keySet()");
 		this.checkType("Object::keySet()", Type.Object);
@@ -1821,7 +3128,8 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 		 * Object:: Set<Script>: { Get a collection of all the keys of Script::Object() }
 		 * Get a collection of all the keys of Script::Object
 		 */
-		java.util.Map<Script, Script> nativeObject = (java.util.Map<Script, Script>)this.script;
+		ScriptObject nativeObject = this.nativeObject();
+		nativeObject.expose();
 		return nativeObject.keySet();
 	}
 	
@@ -1833,7 +3141,6 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 	 * relationship and traverses each call. Its called should be reduced to save
 	 * time and cost</i>.
 	 */
-	@SuppressWarnings("unchecked")
 	public java.util.Set<Script> staticKeySet() {
 		this.checkUndefined("Object::staticKeySet()");
 		this.checkType("Object::staticKeySet()", Type.Object);
@@ -1845,7 +3152,8 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 		 * Object:: Set<Script>: { Get a collection of all the keys of Script::Object() }
 		 * Get a collection of all the keys of Script::Object
 		 */
-		java.util.Map<Script, Script> nativeObject = (java.util.Map<Script, Script>)this.script;
+		ScriptObject nativeObject = this.nativeObject();
+		nativeObject.expose();
 		return new java.util.HashSet<Script>(nativeObject.keySet());
 	}
 	
@@ -1860,8 +3168,7 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 		 * Object:: void: { Clearing invalid key-value pairs () }
 		 * Clear all key-value pairs whose values are Undefined
 		 */
-		@SuppressWarnings("unchecked")
-		java.util.Map<Script, Script> nativeObject = (java.util.Map<Script, Script>)this.script;
+		java.util.Map<Script, Script> nativeObject = this.nativeObject();
 		/**
 		 * Get Entry iterator of Map
 		 * Native and Efficient Iteration Scheme
@@ -1897,8 +3204,7 @@ public final class Script implements Functional/*, java.lang.Iterable<Script>*/
 		 * Object:: void: { Remove all key-value pairs () }
 		 * Remove all key-value pairs from the Object
 		 */
-		@SuppressWarnings("unchecked")
-		java.util.Map<Script, Script> nativeObject = (java.util.Map<Script, Script>)this.script;
+		java.util.Map<Script, Script> nativeObject = this.nativeObject();
 		nativeObject.clear();
 	}
 	
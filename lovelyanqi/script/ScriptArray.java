@@ -0,0 +1,1453 @@
+/*
+ * Copyright (c) 2018, 2020, LovelyAnQi. All rights reserved.
+ *
+ * GitHub: https://github.com/LovelyAnQi/Script-Framework/
+ * License: GPL 3.0
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package lovelyanqi.script;
+
+/**
+ * Class {@code ScriptArray} is the storage of a Script Array: a growable
+ * array of elements without any synchronization.
+ * <br /><br />
+ * The Array API of Script resolves an index once, through {@link #resolve(int)},
+ * which folds reverse addressing and both bound checks into a single test, and
+ * then reads or writes the backing array directly.
+ * <br /><br />
+ * Arrays built from <code>int[]</code> or <code>boolean[]</code> are <i>packed</i>:
+ * while every element is a Number (or every element a Boolean) the values are kept
+ * in a primitive array and no element Script exists. Reading values, serializing,
+ * printing, comparing and hashing work on the primitive array. The storage is
+ * unpacked into element Scripts, once and for good, when an element of another type
+ * is written or when a reference to an element is asked for.
+ * <br /><br />
+ * The elements occupy a window <code>[head, head + size)</code> of the backing
+ * array. An Array only used at its end keeps the window at 0. The first insertion
+ * at the front opens free room before the window, so that <code>shift()</code> and
+ * <code>unshift()</code> move the head instead of every element: push, pop, shift and
+ * unshift are all amortized O(1), and the window stays contiguous for bulk copies.
+ * <br /><br />
+ * A <i>direct</i> Array keeps its Numbers off the Java heap, in an IntBuffer view of
+ * a direct or mapped ByteBuffer which is wrapped, not copied. Reads, writes of Numbers
+ * in place, serializing and printing work on the buffer; any other write first copies
+ * the values onto the heap as a packed Array, just like a shared window.
+ * <br /><br />
+ * A subarray shares the backing array of its parent, see {@link #share(int, int)}.
+ * Shared storages copy their window before the first write of either side.
+ * <br /><br />
+ * The storage counts the Undefined elements written through it, so that
+ * {@link #compact()} can return at once when there are none. Elements handed out
+ * by reference may be deleted behind the storage's back, so once that has happened
+ * the count is only a hint and compaction always scans.
+ * <br /><br />
+ * Thread safety is opt-in: <code>Script::synchronize()</code> moves an Array to
+ * the {@link Synchronized} variant, whose operations each hold the storage
+ * monitor. Iterating a shared Array must still be guarded by the caller.
+ * <br /><br />
+ * The hash code is cached, and every write clears it. It is only trusted while
+ * no write can bypass the storage: while no element has been handed out, or once
+ * the storage is <i>frozen</i>, as the Arrays used as Object keys are, see
+ * {@link #freeze()}. A direct Array never caches it.
+ *
+ * @author  LovelyAnQi
+ * @see     lovelyanqi.script.Script#synchronize()
+ * @since   3.0
+ */
+class ScriptArray extends java.util.AbstractList<Script> implements java.util.RandomAccess {
+
+	/** Shared backing array of empty Arrays, replaced on the first insertion */
+	private static final Script[] EMPTY = {};
+
+	/** Backing array, the elements occupy [head, head + size), null while the storage is packed */
+	Script[] elements;
+
+	/** Packed Numbers, the values of the elements while all of them are Numbers */
+	int[] numbers;
+
+	/** Packed Booleans, the values of the elements while all of them are Booleans */
+	boolean[] booleans;
+
+	/** Off-heap packed Numbers of a direct Array, the values of the elements until one is written otherwise */
+	java.nio.IntBuffer memory;
+
+	/** Position of the first element in the backing array */
+	int head;
+
+	/** Number of elements */
+	int size;
+
+	/** Undefined elements written through the storage, exact while no element reference has been handed out */
+	private int undefined;
+
+	/** Whether references to elements have been handed out, which may become Undefined unnoticed */
+	private boolean exposed;
+
+	/** Whether the backing array may be used by another storage, so it must be copied before any write */
+	private boolean shared;
+
+	/** Whether the storage is in sorted mode, where appended elements go to their ordered position */
+	private boolean sorted;
+
+	/** Whether the storage belongs to an Object key, which can no longer change */
+	private boolean frozen;
+
+	/** Cached hash code, 0 while unknown, only trusted while no write can bypass the storage */
+	private int hash;
+
+	/**
+	 * <b>Storage Constructor</b><br />
+	 * Creates an empty Array.
+	 */
+	ScriptArray() {
+		this.elements = ScriptArray.EMPTY;
+	}
+
+	/**
+	 * <b>Storage Constructor</b><br />
+	 * Creates an empty Array with room for the given number of elements.
+	 */
+	ScriptArray(int capacity) {
+		this.elements = capacity == 0 ? ScriptArray.EMPTY : new Script[capacity];
+	}
+
+	/**
+	 * <b>Storage Constructor</b><br />
+	 * Creates an Array over the first elements of the given array, which is
+	 * taken over and not copied.
+	 */
+	ScriptArray(Script[] elements, int size) {
+		this.elements = elements;
+		this.size = size;
+		for (int position = 0; position < size; position++) {
+			this.count(elements[position], 1);
+		}
+	}
+
+	/**
+	 * <b>Storage Constructor</b><br />
+	 * Creates a packed Array of Numbers holding a copy of the given values.
+	 */
+	ScriptArray(int[] numbers) {
+		this.numbers = numbers.clone();
+		this.size = numbers.length;
+	}
+
+	/**
+	 * <b>Storage Constructor</b><br />
+	 * Creates a packed Array of Booleans holding a copy of the given values.
+	 */
+	ScriptArray(boolean[] booleans) {
+		this.booleans = booleans.clone();
+		this.size = booleans.length;
+	}
+
+	/**
+	 * <b>Storage Constructor</b><br />
+	 * Creates a direct Array over the whole Numbers from the position to the limit of
+	 * a buffer, in the byte order of the buffer. Nothing is copied: the buffer holds
+	 * the values and sees the writes of Numbers in place.
+	 */
+	ScriptArray(java.nio.ByteBuffer buffer) {
+		this.memory = buffer.slice().order(buffer.order()).asIntBuffer();
+		this.size = this.memory.remaining();
+	}
+
+	/**
+	 * <b>Storage Constructor</b><br />
+	 * Takes over the storage of another Array, which must not be used afterwards.
+	 */
+	ScriptArray(ScriptArray source) {
+		this.elements = source.elements;
+		this.numbers = source.numbers;
+		this.booleans = source.booleans;
+		this.memory = source.memory;
+		this.head = source.head;
+		this.size = source.size;
+		this.undefined = source.undefined;
+		this.exposed = source.exposed;
+		this.shared = source.shared;
+		this.sorted = source.sorted;
+		this.frozen = source.frozen;
+	}
+
+	/**
+	 * <i>ScriptArray::packedCopy()</i><br />
+	 * Returns a packed copy of a packed Array, or null if the Array is not packed.
+	 */
+	ScriptArray packedCopy() {
+		if (this.numeric()) {
+			return new ScriptArray(this.copyNumbers(this.head, this.head + this.size));
+		}
+		if (this.booleans != null) {
+			return new ScriptArray(java.util.Arrays.copyOfRange(this.booleans, this.head, this.head + this.size));
+		}
+		return null;
+	}
+
+	/**
+	 * <i>ScriptArray::share(int, int)</i><br />
+	 * Returns a storage over the range [from, to) of this one, sharing its
+	 * backing array: nothing is copied until either storage is written to. The
+	 * element Scripts themselves stay shared for good.
+	 */
+	ScriptArray share(int from, int to) {
+		long range = this.range(from, to);
+		from = (int)(range >>> 32);
+		to = (int)range;
+		ScriptArray view = new ScriptArray(this);
+		view.head = this.head + from;
+		view.size = to - from;
+		view.exposed = true;					//The elements are reachable from both sides
+		view.shared = true;
+		view.frozen = false;
+		this.exposed = true;
+		this.shared = true;
+		return view;
+	}
+
+	/**
+	 * <i>ScriptArray::copyRange(int, int)</i><br />
+	 * Returns a copy of the range [from, to), packed if this storage is.
+	 */
+	ScriptArray copyRange(int from, int to) {
+		long range = this.range(from, to);
+		return this.copyOf((int)(range >>> 32), (int)range);
+	}
+
+	/**
+	 * <i>ScriptArray::range(int, int)</i><br />
+	 * Resolves the bounds of a range, negative bounds counting from the end and the
+	 * length being a valid bound, packed as from in the high and to in the low half.
+	 */
+	long range(int from, int to) {
+		int size = this.size;
+		int start = from < 0 ? from + size : from;
+		int end = to < 0 ? to + size : to;
+		if ((start | (end - start) | (size - end)) < 0) {
+			throw new java.lang.RuntimeException(
+					"ArrayIndexOutOfBoundsException\n\t" +
+					"range: [" + from + ", " + to + "), the bounds of the Array are [0, " + size + "]"
+			);
+		}
+		return (long)start << 32 | end;
+	}
+
+	/**
+	 * <i>ScriptArray::addAll(int, ScriptArray)</i><br />
+	 * Inserts all the elements of a storage before a position, negative positions
+	 * counting from the end, with one capacity check and one copy. The given storage
+	 * is used up.
+	 */
+	void addAll(int index, ScriptArray items) {
+		int count = items.size;
+		int position = index < 0 ? index + this.size : index;
+		if ((position | (this.size - position)) < 0) {
+			throw ScriptArray.outOfBounds(index, this.size + 1);		//The length is a valid position
+		}
+		index = position;
+		if (count == 0) {
+			return;
+		}
+		boolean sorted = this.sorted && index == this.size;		//Appended to a sorted storage
+		items.own();
+		if (this.elements == null && !(this.numeric() && items.numbers != null
+				|| this.booleans != null && items.booleans != null)) {
+			this.unpack();
+		}
+		if (this.elements != null && items.elements == null) {
+			items.unpack();
+		}
+		this.own();
+		this.modCount++;
+
+		/** One capacity check for the whole batch */
+		int capacity = this.capacity();
+		long required = (long)this.size + count;
+		if (this.head + required > capacity) {
+			if (required <= capacity) {
+				this.relocate(0, capacity);
+			} else {
+				long grown = java.lang.Math.max(this.head + required, capacity + (capacity >> 1));
+				this.relocate(this.head, ScriptArray.checkCapacity(grown));
+			}
+		}
+		java.lang.Object storage = this.storage();
+		int at = this.head + index;
+		java.lang.System.arraycopy(storage, at, storage, at + count, this.size - index);
+		java.lang.System.arraycopy(items.storage(), items.head, storage, at, count);
+		this.size += count;
+		this.undefined += items.undefined;
+		this.exposed |= items.exposed;
+		this.sorted = false;
+		if (sorted) {
+			/** Both runs are found and merged by the sort */
+			this.keepSorted();
+		}
+	}
+
+	/**
+	 * <i>ScriptArray::cut(int, int)</i><br />
+	 * Removes the range [from, to) and returns it as a new storage, packed if
+	 * this one is.
+	 */
+	ScriptArray cut(int from, int to) {
+		long range = this.range(from, to);
+		from = (int)(range >>> 32);
+		to = (int)range;
+		int count = to - from;
+		ScriptArray removed = this.copyOf(from, to);
+		if (count == 0) {
+			return removed;
+		}
+		this.own();
+		this.modCount++;
+
+		/** The shorter side closes the gap */
+		java.lang.Object storage = this.storage();
+		if (from < this.size - to) {
+			java.lang.System.arraycopy(storage, this.head, storage, this.head + count, from);
+			this.release(this.head, this.head + count);
+			this.head += count;
+		} else {
+			int end = this.head + this.size;
+			java.lang.System.arraycopy(storage, this.head + to, storage, this.head + from, this.size - to);
+			this.release(end - count, end);
+		}
+		this.size -= count;
+		if (this.size == 0) {
+			this.head = 0;
+		}
+		this.undefined = java.lang.Math.max(0, this.undefined - removed.undefined);
+		return removed;
+	}
+
+	/**
+	 * <i>ScriptArray::resolve(int)</i><br />
+	 * Returns the position of an index, negative indexes counting from the end,
+	 * or throws the ArrayIndexOutOfBoundsException of the Array API.
+	 */
+	int resolve(int index) {
+		int size = this.size;
+		int position = index < 0 ? index + size : index;
+		if ((position | (size - 1 - position)) < 0) {
+			throw ScriptArray.outOfBounds(index, size);
+		}
+		return position;
+	}
+
+	/**
+	 * <i>ScriptArray::at(int)</i><br />
+	 * Returns the element at an index, negative indexes counting from the end.
+	 */
+	Script at(int index) {
+		int position = this.resolve(index);
+		if (this.memory != null) {
+			return this.peek(position);				//Off-heap values are read as new Numbers
+		}
+		if (this.elements == null) {
+			this.unpack();
+		}
+		this.exposed = true;
+		return this.elements[this.head + position];
+	}
+
+	/**
+	 * <i>ScriptArray::unpacked()</i><br />
+	 * Returns the backing element array, unpacking a packed storage first, for the
+	 * elements in [head, head + size) to be handed out by reference.
+	 */
+	Script[] unpacked() {
+		if (this.elements == null) {
+			this.unpack();
+		}
+		this.exposed = true;
+		return this.elements;
+	}
+
+	/**
+	 * <i>ScriptArray::sort(java.util.Comparator, boolean)</i><br />
+	 * Sorts the elements in place, stably, on the common ForkJoinPool if parallel.
+	 */
+	void sort(java.util.Comparator<? super Script> comparator, boolean parallel) {
+		this.sorted = false;						//Another order than that of the sorted mode
+		if (this.size < 2) {
+			return;
+		}
+		if (this.elements == null) {
+			this.unpack();
+		}
+		this.own();
+		int from = this.head;
+		int to = this.head + this.size;
+		if (parallel) {
+			java.util.Arrays.parallelSort(this.elements, from, to, comparator);
+		} else {
+			java.util.Arrays.sort(this.elements, from, to, comparator);
+		}
+		this.modCount++;
+	}
+
+	/**
+	 * <i>ScriptArray::sortNatural(boolean)</i><br />
+	 * Sorts the elements in place in the order of <code>Script::compareTo()</code>,
+	 * on the common ForkJoinPool if parallel. Packed values are sorted as they are.
+	 */
+	void sortNatural(boolean parallel) {
+		if (this.size < 2) {
+			return;
+		}
+		this.own();
+		this.modCount++;
+		int from = this.head;
+		int to = this.head + this.size;
+		if (this.numbers != null) {
+			if (parallel) {
+				java.util.Arrays.parallelSort(this.numbers, from, to);
+			} else {
+				java.util.Arrays.sort(this.numbers, from, to);
+			}
+		} else if (this.booleans != null) {
+			/** false before true: counting is enough */
+			int falses = 0;
+			for (int position = from; position < to; position++) {
+				if (!this.booleans[position]) falses++;
+			}
+			java.util.Arrays.fill(this.booleans, from, from + falses, false);
+			java.util.Arrays.fill(this.booleans, from + falses, to, true);
+		} else if (parallel) {
+			java.util.Arrays.parallelSort(this.elements, from, to);
+		} else {
+			java.util.Arrays.sort(this.elements, from, to);
+		}
+	}
+
+	/**
+	 * <i>ScriptArray::keepSorted()</i><br />
+	 * Sorts the storage and puts it in sorted mode.
+	 */
+	void keepSorted() {
+		this.sortNatural(false);
+		this.sorted = true;
+	}
+
+	/**
+	 * <i>ScriptArray::isSorted()</i><br />
+	 * Returns whether the storage is in sorted mode.
+	 */
+	boolean isSorted() {
+		return this.sorted;
+	}
+
+	/**
+	 * <i>ScriptArray::search(Script)</i><br />
+	 * Binary search of an element in the sorted storage: returns its position, or
+	 * (-(insertion position) - 1) if it is not there, as Arrays.binarySearch() does.
+	 */
+	int search(Script key) {
+		if (this.numbers != null && key.type == Script.Type.Number) {
+			int found = java.util.Arrays.binarySearch(this.numbers, this.head, this.head + this.size, (java.lang.Integer)key.script);
+			return found >= 0 ? found - this.head : found + this.head;
+		}
+		int low = 0;
+		int high = this.size - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int compare = this.compareAt(middle, key);
+			if (compare < 0) {
+				low = middle + 1;
+			} else if (compare > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * <i>ScriptArray::compareContent(ScriptArray)</i><br />
+	 * Compares two Arrays element by element, then by length, as <code>Script::compareTo()</code> does.
+	 */
+	int compareContent(ScriptArray other) {
+		int length = java.lang.Math.min(this.size, other.size);
+		int offset = this.head;
+		int otherOffset = other.head;
+		if (this.numeric() && other.numeric()) {
+			for (int position = 0; position < length; position++) {
+				int compare = java.lang.Integer.compare(this.number(offset + position), other.number(otherOffset + position));
+				if (compare != 0) return compare;
+			}
+		} else {
+			for (int position = 0; position < length; position++) {
+				int compare = this.elements != null ? -other.compareAt(position, this.elements[offset + position])
+						: this.compareAt(position, other.peek(position));
+				if (compare != 0) return compare;
+			}
+		}
+		return java.lang.Integer.compare(this.size, other.size);
+	}
+
+	/**
+	 * <i>ScriptArray::expose()</i><br />
+	 * Records that references to the elements are handed out of the storage.
+	 */
+	void expose() {
+		this.exposed = true;
+	}
+
+	/**
+	 * <i>ScriptArray::isExposed()</i><br />
+	 * Returns whether references to the elements may be held outside the storage.
+	 */
+	boolean isExposed() {
+		return this.exposed;
+	}
+
+	/**
+	 * <i>ScriptArray::freeze()</i><br />
+	 * Freezes the storage and locks its elements, deeply: the Array is an Object key,
+	 * whose hash code must stay valid. Any later write to the storage throws.
+	 */
+	void freeze() {
+		if (this.frozen) {
+			return;
+		}
+		this.frozen = true;
+		for (int position = this.head; this.elements != null && position < this.head + this.size; position++) {
+			this.elements[position].freeze();
+		}
+	}
+
+	/**
+	 * <i>ScriptArray::compact()</i><br />
+	 * Removes every Undefined element in one pass, keeping the order of the others,
+	 * and returns the number of elements removed.
+	 */
+	int compact() {
+		if (this.elements == null || !this.exposed && this.undefined == 0) {
+			return 0;							//Packed values are never Undefined
+		}
+		this.own();
+		Script[] nativeElements = this.elements;
+		int end = this.head + this.size;
+		int seeker = this.head;
+		for (int position = this.head; position < end; position++) {
+			Script element = nativeElements[position];
+			if (element.type != Script.Type.Undefined) {
+				nativeElements[seeker++] = element;
+			}
+		}
+		int removed = end - seeker;
+		if (removed > 0) {
+			this.modCount++;
+			this.release(seeker, end);
+			this.size -= removed;
+			if (this.size == 0) {
+				this.head = 0;
+			}
+		}
+		this.undefined = 0;
+		return removed;
+	}
+
+	/**
+	 * <i>ScriptArray::numeric()</i><br />
+	 * Returns whether the storage holds packed Numbers, on or off the heap.
+	 */
+	boolean numeric() {
+		return this.numbers != null || this.memory != null;
+	}
+
+	/**
+	 * <i>ScriptArray::number(int)</i><br />
+	 * Returns the packed Number at an absolute position of the backing storage.
+	 */
+	int number(int position) {
+		return this.numbers != null ? this.numbers[position] : this.memory.get(position);
+	}
+
+	/**
+	 * <i>ScriptArray::valueAt(int)</i><br />
+	 * Returns the element at an absolute position of the backing storage, a new Number
+	 * or Boolean for a packed or direct storage, which is read in place and stays so.
+	 */
+	Script valueAt(int position) {
+		return this.elements != null ? this.elements[position] : this.peek(position - this.head);
+	}
+
+	/**
+	 * <i>ScriptArray::intAt(int)</i><br />
+	 * Returns the value of the Number at an index, negative indexes counting from the end.
+	 */
+	int intAt(int index) {
+		int position = this.resolve(index);
+		if (this.numeric()) {
+			return this.number(this.head + position);
+		}
+		return this.peek(position).intValue();
+	}
+
+	/**
+	 * <i>ScriptArray::booleanAt(int)</i><br />
+	 * Returns the value of the Boolean at an index, negative indexes counting from the end.
+	 */
+	boolean booleanAt(int index) {
+		int position = this.resolve(index);
+		if (this.booleans != null) {
+			return this.booleans[this.head + position];
+		}
+		return this.peek(position).booleanValue();
+	}
+
+	/**
+	 * <i>ScriptArray::insertAt(int, Script)</i><br />
+	 * Inserts an element before an existing index, negative indexes counting from the end.
+	 */
+	void insertAt(int index, Script element) {
+		this.add(this.resolve(index), element);
+	}
+
+	/**
+	 * <i>ScriptArray::removeAt(int)</i><br />
+	 * Removes and returns the element at an index, negative indexes counting from the end.
+	 */
+	Script removeAt(int index) {
+		return this.remove(this.resolve(index));
+	}
+
+	/**
+	 * <i>ScriptArray::appendTo(java.lang.StringBuilder, int)</i><br />
+	 * Appends the string form of the element at a position.
+	 */
+	void appendTo(java.lang.StringBuilder builder, int position) {
+		position += this.head;
+		if (this.numeric()) {
+			builder.append(this.number(position));
+		} else if (this.booleans != null) {
+			builder.append(this.booleans[position]);
+		} else {
+			builder.append(this.elements[position].toString());
+		}
+	}
+
+	/**
+	 * <i>ScriptArray::contentEquals(ScriptArray)</i><br />
+	 * Compares the elements of two Arrays one by one, as <code>Script::equals()</code> does.
+	 */
+	boolean contentEquals(ScriptArray other) {
+		int size = this.size;
+		if (size != other.size) {
+			return false;
+		}
+		int offset = this.head;
+		int otherOffset = other.head;
+		if (this.numeric() && other.numeric()) {
+			for (int position = 0; position < size; position++) {
+				if (this.number(offset + position) != other.number(otherOffset + position)) return false;
+			}
+			return true;
+		}
+		if (this.booleans != null && other.booleans != null) {
+			for (int position = 0; position < size; position++) {
+				if (this.booleans[offset + position] != other.booleans[otherOffset + position]) return false;
+			}
+			return true;
+		}
+		for (int position = 0; position < size; position++) {
+			if (this.elements != null && other.elements != null) {
+				if (!this.elements[offset + position].equals(other.elements[otherOffset + position])) {
+					return false;
+				}
+			} else if (!(this.elements == null ? this.valueEquals(position, other.peekValue(position))
+					: other.valueEquals(position, this.elements[offset + position]))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public Script get(int index) {
+		this.checkPosition(index);
+		if (this.memory != null) {
+			return this.peek(index);
+		}
+		if (this.elements == null) {
+			this.unpack();
+		}
+		return this.elements[this.head + index];
+	}
+
+	@Override
+	public Script set(int index, Script element) {
+		this.checkPosition(index);
+		if (this.memory != null && !this.shared && !this.frozen && !this.memory.isReadOnly() && element.type == Script.Type.Number) {
+			/** Written in place into the buffer */
+			Script previous = this.peek(index);
+			this.memory.put(this.head + index, (java.lang.Integer)element.script);
+			this.sorted = false;
+			return previous;
+		}
+		this.own();
+		this.sorted = false;						//Positional writes give up the order
+		if (this.elements == null) {
+			if (this.packs(element)) {
+				Script previous = this.peek(index);
+				this.store(index, element);
+				return previous;
+			}
+			this.unpack();
+		}
+		Script previous = this.elements[this.head + index];
+		this.elements[this.head + index] = element;
+		this.count(previous, -1);
+		this.count(element, 1);
+		return previous;
+	}
+
+	@Override
+	public boolean add(Script element) {
+		if (this.sorted) {
+			this.insert(this.bound(element), element);
+		} else {
+			this.insert(this.size, element);
+		}
+		return true;
+	}
+
+	@Override
+	public void add(int index, Script element) {
+		this.insert(index, element);
+		this.sorted = false;						//Positional writes give up the order
+	}
+
+	/** Inserts an element before a position */
+	private void insert(int index, Script element) {
+		int size = this.size;
+		if (index < 0 || index > size) {
+			throw new java.lang.IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		if (this.elements == null && !this.packs(element)) {
+			this.unpack();
+		}
+		this.own();
+		this.modCount++;
+
+		/** Front half: the elements before the index move towards the head */
+		if (index < size && (index == 0 || this.head > 0 && index < size >> 1)) {
+			if (this.head == 0) {
+				this.openFront();
+			}
+			java.lang.Object storage = this.storage();
+			java.lang.System.arraycopy(storage, this.head, storage, this.head - 1, index);
+			this.head--;
+		} else {
+			if (this.head + size == this.capacity()) {
+				this.openBack();
+			}
+			java.lang.Object storage = this.storage();
+			java.lang.System.arraycopy(storage, this.head + index, storage, this.head + index + 1, size - index);
+		}
+		this.size++;
+		if (this.elements == null) {
+			this.store(index, element);
+		} else {
+			this.elements[this.head + index] = element;
+			this.count(element, 1);
+		}
+	}
+
+	@Override
+	public Script remove(int index) {
+		this.checkPosition(index);
+		this.own();
+		this.modCount++;
+		Script previous = this.peek(index);
+		java.lang.Object storage = this.storage();
+
+		/** The shorter side closes the gap, removing the first element only moves the head */
+		if (index < this.size >> 1) {
+			java.lang.System.arraycopy(storage, this.head, storage, this.head + 1, index);
+			this.release(this.head, this.head + 1);
+			this.head++;
+		} else {
+			int end = this.head + this.size;
+			java.lang.System.arraycopy(storage, this.head + index + 1, storage, this.head + index, this.size - index - 1);
+			this.release(end - 1, end);
+		}
+		if (--this.size == 0) {
+			this.head = 0;
+		}
+		this.count(previous, -1);
+		return previous;
+	}
+
+	@Override
+	public void clear() {
+		this.checkFrozen();
+		this.hash = 0;
+		this.modCount++;
+		if (this.elements != null && !this.shared) {
+			this.release(this.head, this.head + this.size);
+		} else {
+			this.elements = ScriptArray.EMPTY;
+			this.numbers = null;
+			this.booleans = null;
+			this.memory = null;
+		}
+		this.head = 0;
+		this.size = 0;
+		this.undefined = 0;
+		this.exposed = false;
+		this.shared = false;
+	}
+
+	@Override
+	public Script[] toArray() {
+		if (this.elements == null) {
+			this.unpack();
+		}
+		return java.util.Arrays.copyOfRange(this.elements, this.head, this.head + this.size);
+	}
+
+	@Override
+	public void sort(java.util.Comparator<? super Script> comparator) {
+		this.sort(comparator, false);
+	}
+
+	@Override
+	public java.util.Iterator<Script> iterator() {
+		return this.cursor();
+	}
+
+	@Override
+	public java.util.Spliterator<Script> spliterator() {
+		return this.cursor();
+	}
+
+	/**
+	 * <i>ScriptArray::cursor()</i><br />
+	 * Returns a cursor over all the elements, unpacking a packed storage first
+	 * since the elements are handed out by reference.
+	 */
+	Cursor cursor() {
+		if (this.elements == null && this.memory == null) {
+			this.unpack();
+		}
+		return new Cursor(this, 0, this.size);
+	}
+
+	@Override
+	public int hashCode() {
+		boolean trusted = this.memory == null && (this.frozen || !this.exposed);
+		if (trusted && this.hash != 0) {
+			return this.hash;
+		}
+		int hash = 1;
+		for (int position = this.head; position < this.head + this.size; position++) {
+			hash = 31 * hash + (this.numeric() ? this.number(position) :
+					this.booleans != null ? java.lang.Boolean.hashCode(this.booleans[position]) :
+					this.elements[position].hashCode());
+		}
+		if (trusted) {
+			this.hash = hash;
+		}
+		return hash;
+	}
+
+	@Override
+	public boolean equals(java.lang.Object object) {
+		if (object instanceof ScriptArray) {
+			return this.contentEquals((ScriptArray)object);
+		}
+		if (this.elements != null || !(object instanceof java.util.List)) {
+			return super.equals(object);
+		}
+		java.util.List<?> other = (java.util.List<?>)object;
+		if (other.size() != this.size) {
+			return false;
+		}
+		int position = 0;
+		for (java.lang.Object value : other) {
+			if (!this.valueEquals(position++, value)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Room after the window: the window moves back to 0 if the head has advanced far enough, else the storage grows by half */
+	private void openBack() {
+		int capacity = this.capacity();
+		if (this.head > 0 && this.head >= this.size >> 1) {
+			this.relocate(0, capacity);
+			return;
+		}
+		long grown = java.lang.Math.max(capacity + (capacity >> 1), java.lang.Math.max(this.size + 1L, 0x0A));
+		this.relocate(this.head, ScriptArray.checkCapacity(grown));
+	}
+
+	/** Room before the window, half the size at least, so that front insertions are amortized O(1) */
+	private void openFront() {
+		int room = java.lang.Math.max(this.size >> 1, 0x08);
+		int capacity = this.capacity();
+		if (capacity - this.size >= room) {
+			this.relocate(room, capacity);
+		} else {
+			this.relocate(room, ScriptArray.checkCapacity((long)this.size + 2L * room));
+		}
+	}
+
+	/** Moves the window to a new head, into a new array if the capacity changes */
+	private void relocate(int head, int capacity) {
+		java.lang.Object storage = this.storage();
+		java.lang.Object target = storage;
+		if (capacity != this.capacity()) {
+			target = this.elements != null ? new Script[capacity] :
+					this.numbers != null ? (java.lang.Object)new int[capacity] : new boolean[capacity];
+		}
+		java.lang.System.arraycopy(storage, this.head, target, head, this.size);
+		if (target == storage) {
+			/** Slots left behind no longer hold references */
+			if (head > this.head) {
+				this.release(this.head, java.lang.Math.min(head, this.head + this.size));
+			} else {
+				this.release(java.lang.Math.max(head + this.size, this.head), this.head + this.size);
+			}
+		} else if (this.elements != null) {
+			this.elements = (Script[])target;
+		} else if (this.numbers != null) {
+			this.numbers = (int[])target;
+		} else {
+			this.booleans = (boolean[])target;
+		}
+		this.head = head;
+	}
+
+	/** Clears element references in a range of the backing array */
+	private void release(int from, int to) {
+		if (this.elements != null && from < to) {
+			java.util.Arrays.fill(this.elements, from, to, null);
+		}
+	}
+
+	/** Capacities beyond the range of a Java array cannot be allocated */
+	private static int checkCapacity(long capacity) {
+		if (capacity > java.lang.Integer.MAX_VALUE - 8) {
+			throw new java.lang.OutOfMemoryError("Array too large: " + capacity + " elements");
+		}
+		return (int)capacity;
+	}
+
+	/** Copies resolved positions into a new storage */
+	private ScriptArray copyOf(int from, int to) {
+		from += this.head;
+		to += this.head;
+		if (this.numeric()) {
+			return new ScriptArray(this.copyNumbers(from, to));
+		}
+		if (this.booleans != null) {
+			return new ScriptArray(java.util.Arrays.copyOfRange(this.booleans, from, to));
+		}
+		return new ScriptArray(java.util.Arrays.copyOfRange(this.elements, from, to), to - from);
+	}
+
+	/** Takes a private copy of a shared window, or of off-heap values, before it is written to */
+	private void own() {
+		this.checkFrozen();
+		this.hash = 0;
+		if (this.memory != null) {
+			this.numbers = this.copyNumbers(this.head, this.head + this.size);
+			this.memory = null;
+			this.head = 0;
+			this.shared = false;
+			return;
+		}
+		if (!this.shared) {
+			return;
+		}
+		java.lang.Object storage = this.storage();
+		int from = this.head;
+		int to = this.head + this.size;
+		if (this.elements != null) {
+			this.elements = java.util.Arrays.copyOfRange(this.elements, from, to);
+		} else if (this.numbers != null) {
+			this.numbers = java.util.Arrays.copyOfRange((int[])storage, from, to);
+		} else {
+			this.booleans = java.util.Arrays.copyOfRange((boolean[])storage, from, to);
+		}
+		this.head = 0;
+		this.shared = false;
+	}
+
+	/** Writes to the storage of an Object key are refused */
+	private void checkFrozen() {
+		if (this.frozen) {
+			throw new java.lang.RuntimeException(
+					"IllegalFunctionInvocationException\n\tAn Array used as an Object key cannot be changed"
+			);
+		}
+	}
+
+	/** Keeps the count of Undefined elements */
+	private void count(Script element, int delta) {
+		if (element.type == Script.Type.Undefined && this.undefined + delta >= 0) {
+			this.undefined += delta;
+		}
+	}
+
+	/** Whether an element can be written into the packed storage */
+	private boolean packs(Script element) {
+		return this.numeric() ? element.type == Script.Type.Number : element.type == Script.Type.Boolean;
+	}
+
+	/** Compares the element at a position with a Script, in the order of Script::compareTo() */
+	private int compareAt(int position, Script key) {
+		position += this.head;
+		if (this.elements != null) {
+			return this.elements[position].compareTo(key);
+		}
+		if (this.numeric()) {
+			return key.type == Script.Type.Number
+					? java.lang.Integer.compare(this.number(position), (java.lang.Integer)key.script)
+					: java.lang.Integer.compare(Script.rank(Script.Type.Number), Script.rank(key.type));
+		}
+		return key.type == Script.Type.Boolean
+				? java.lang.Boolean.compare(this.booleans[position], (java.lang.Boolean)key.script)
+				: java.lang.Integer.compare(Script.rank(Script.Type.Boolean), Script.rank(key.type));
+	}
+
+	/** First position whose element is greater than a Script, so equal elements keep their insertion order */
+	private int bound(Script key) {
+		int low = 0;
+		int high = this.size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (this.compareAt(middle, key) <= 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/** Writes the value of an element into the packed storage */
+	private void store(int position, Script element) {
+		position += this.head;
+		if (this.numbers != null) {
+			this.numbers[position] = (java.lang.Integer)element.script;
+		} else {
+			this.booleans[position] = (java.lang.Boolean)element.script;
+		}
+	}
+
+	/** The element at a position, a new Script holding the value if the storage is packed */
+	private Script peek(int position) {
+		position += this.head;
+		if (this.numeric()) {
+			return Script.Number(this.number(position));
+		}
+		if (this.booleans != null) {
+			return Script.Boolean(this.booleans[position]);
+		}
+		return this.elements[position];
+	}
+
+	/** The element at a position, a new Number for a direct storage, which is never unpacked to be read */
+	private Script element(int position) {
+		return this.elements != null ? this.elements[this.head + position] : this.peek(position);
+	}
+
+	/** The element at a position, or its boxed value if the storage is packed */
+	private java.lang.Object peekValue(int position) {
+		position += this.head;
+		if (this.numeric()) {
+			return this.number(position);
+		}
+		if (this.booleans != null) {
+			return this.booleans[position];
+		}
+		return this.elements[position];
+	}
+
+	/** Whether the packed value at a position equals a Script, an Integer or a Boolean */
+	private boolean valueEquals(int position, java.lang.Object value) {
+		position += this.head;
+		if (value instanceof Script) {
+			Script element = (Script)value;
+			if (this.numeric()) {
+				return element.type == Script.Type.Number && (java.lang.Integer)element.script == this.number(position);
+			}
+			return element.type == Script.Type.Boolean && (java.lang.Boolean)element.script == this.booleans[position];
+		}
+		if (this.numeric()) {
+			return value instanceof java.lang.Integer && (java.lang.Integer)value == this.number(position);
+		}
+		return value instanceof java.lang.Boolean && (java.lang.Boolean)value == this.booleans[position];
+	}
+
+	/** Replaces the packed storage with element Scripts */
+	private void unpack() {
+		Script[] unpacked = new Script[this.capacity()];
+		for (int position = 0; position < this.size; position++) {
+			unpacked[this.head + position] = this.peek(position);
+		}
+		this.elements = unpacked;
+		this.numbers = null;
+		this.booleans = null;
+		this.memory = null;
+		this.shared = false;						//The new array is private
+	}
+
+	/** The array in use */
+	private java.lang.Object storage() {
+		return this.elements != null ? this.elements : this.numbers != null ? this.numbers : this.booleans;
+	}
+
+	/** Length of the array in use */
+	private int capacity() {
+		return this.elements != null ? this.elements.length : this.numbers != null ? this.numbers.length :
+				this.memory != null ? this.memory.limit() : this.booleans.length;
+	}
+
+	/** Copies packed Numbers, on or off the heap, between absolute positions */
+	private int[] copyNumbers(int from, int to) {
+		if (this.numbers != null) {
+			return java.util.Arrays.copyOfRange(this.numbers, from, to);
+		}
+		int[] copy = new int[to - from];
+		java.nio.IntBuffer source = this.memory.duplicate();		//The position of the buffer itself is untouched
+		source.position(from);
+		source.get(copy);
+		return copy;
+	}
+
+	/** Position check of the java.util.List operations */
+	private void checkPosition(int index) {
+		if ((index | (this.size - 1 - index)) < 0) {
+			throw new java.lang.IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+		}
+	}
+
+	/** Out of bounds exception of the Array API */
+	static java.lang.RuntimeException outOfBounds(int index, int size) {
+		return new java.lang.RuntimeException(
+				"ArrayIndexOutOfBoundsException\n\t" +
+				"index: " + index + ", the range of the Array is [0, " + (size - 1) + "]"
+		);
+	}
+
+	/**
+	 * Class {@code ScriptArray.Cursor} is both the iterator and the spliterator
+	 * of the storage: a range of positions read straight from the backing array,
+	 * with no bounds check per element. A spliterator splits its range in halves,
+	 * so the sizes of both parts are exact.
+	 * <br /><br />
+	 * <i>A change to the storage not made through the cursor itself fails fast
+	 * with ConcurrentModificationException</i>.
+	 */
+	static final class Cursor implements java.util.Iterator<Script>, java.util.Spliterator<Script> {
+
+		/** Storage iterated over */
+		private final ScriptArray array;
+
+		/** Next position to read */
+		private int position;
+
+		/** End of the range, exclusive */
+		private int end;
+
+		/** Position last returned by next(), -1 if none can be removed */
+		private int last = -1;
+
+		/** Modification count the cursor is valid for */
+		private int expected;
+
+		Cursor(ScriptArray array, int position, int end) {
+			this.array = array;
+			this.position = position;
+			this.end = end;
+			this.expected = array.modCount;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.position < this.end;
+		}
+
+		@Override
+		public Script next() {
+			this.checkModification();
+			if (this.position >= this.end) {
+				throw new java.util.NoSuchElementException();
+			}
+			this.last = this.position;
+			return this.array.element(this.position++);
+		}
+
+		@Override
+		public void remove() {
+			if (this.last < 0) {
+				throw new java.lang.IllegalStateException();
+			}
+			this.checkModification();
+			this.array.remove(this.last);
+			this.position = this.last;
+			this.last = -1;
+			this.end--;
+			this.expected = this.array.modCount;
+		}
+
+		@Override
+		public boolean tryAdvance(java.util.function.Consumer<? super Script> action) {
+			if (this.position >= this.end) {
+				return false;
+			}
+			this.checkModification();
+			action.accept(this.array.element(this.position++));
+			this.checkModification();
+			return true;
+		}
+
+		@Override
+		public void forEachRemaining(java.util.function.Consumer<? super Script> action) {
+			/** The array and its head are read once, as nothing may change them meanwhile */
+			this.checkModification();
+			Script[] nativeElements = this.array.elements;
+			int head = this.array.head;
+			int end = this.end;
+			for (int position = this.position; position < end; position++) {
+				action.accept(nativeElements != null ? nativeElements[head + position] : this.array.peek(position));
+			}
+			this.position = end;
+			this.last = -1;
+			this.checkModification();
+		}
+
+		@Override
+		public java.util.Spliterator<Script> trySplit() {
+			int from = this.position;
+			int middle = (from + this.end) >>> 1;
+			if (middle <= from) {
+				return null;
+			}
+			this.position = middle;
+			Cursor prefix = new Cursor(this.array, from, middle);
+			prefix.expected = this.expected;
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize() {
+			return this.end - this.position;
+		}
+
+		@Override
+		public int characteristics() {
+			return java.util.Spliterator.SIZED | java.util.Spliterator.SUBSIZED | java.util.Spliterator.ORDERED;
+		}
+
+		/** Fails fast on a change made behind the cursor */
+		private void checkModification() {
+			if (this.array.modCount != this.expected) {
+				throw new java.util.ConcurrentModificationException();
+			}
+		}
+	}
+
+	/**
+	 * Class {@code ScriptArray.Synchronized} is the thread-safe Array storage
+	 * chosen by <code>Script::synchronize()</code>. Every operation holds the
+	 * monitor of the storage, so that a resolved index is used under the same lock.
+	 */
+	static final class Synchronized extends ScriptArray {
+
+		/**
+		 * <b>Storage Constructor</b><br />
+		 * Takes over the storage of an unsynchronized Array.
+		 */
+		Synchronized(ScriptArray source) {
+			super(source);
+		}
+
+		@Override
+		synchronized int resolve(int index) {
+			return super.resolve(index);
+		}
+
+		@Override
+		synchronized Script at(int index) {
+			return super.at(index);
+		}
+
+		@Override
+		synchronized Script valueAt(int position) {
+			return super.valueAt(position);
+		}
+
+		@Override
+		synchronized int intAt(int index) {
+			return super.intAt(index);
+		}
+
+		@Override
+		synchronized boolean booleanAt(int index) {
+			return super.booleanAt(index);
+		}
+
+		@Override
+		synchronized ScriptArray share(int from, int to) {
+			return super.share(from, to);
+		}
+
+		@Override
+		synchronized void sortNatural(boolean parallel) {
+			super.sortNatural(parallel);
+		}
+
+		@Override
+		synchronized void keepSorted() {
+			super.keepSorted();
+		}
+
+		@Override
+		synchronized boolean isSorted() {
+			return super.isSorted();
+		}
+
+		@Override
+		synchronized int search(Script key) {
+			return super.search(key);
+		}
+
+		@Override
+		synchronized int compareContent(ScriptArray other) {
+			return super.compareContent(other);
+		}
+
+		@Override
+		synchronized Script[] unpacked() {
+			return super.unpacked();
+		}
+
+		@Override
+		synchronized void sort(java.util.Comparator<? super Script> comparator, boolean parallel) {
+			super.sort(comparator, parallel);
+		}
+
+		@Override
+		synchronized Cursor cursor() {
+			return super.cursor();
+		}
+
+		@Override
+		synchronized ScriptArray copyRange(int from, int to) {
+			return super.copyRange(from, to);
+		}
+
+		@Override
+		synchronized void addAll(int index, ScriptArray items) {
+			super.addAll(index, items);
+		}
+
+		@Override
+		synchronized ScriptArray cut(int from, int to) {
+			return super.cut(from, to);
+		}
+
+		@Override
+		synchronized void freeze() {
+			super.freeze();
+		}
+
+		@Override
+		synchronized int compact() {
+			return super.compact();
+		}
+
+		@Override
+		synchronized void insertAt(int index, Script element) {
+			super.insertAt(index, element);
+		}
+
+		@Override
+		synchronized Script removeAt(int index) {
+			return super.removeAt(index);
+		}
+
+		@Override
+		public synchronized int size() {
+			return super.size();
+		}
+
+		@Override
+		public synchronized Script get(int index) {
+			return super.get(index);
+		}
+
+		@Override
+		public synchronized Script set(int index, Script element) {
+			return super.set(index, element);
+		}
+
+		@Override
+		public synchronized boolean add(Script element) {
+			return super.add(element);
+		}
+
+		@Override
+		public synchronized void add(int index, Script element) {
+			super.add(index, element);
+		}
+
+		@Override
+		public synchronized Script remove(int index) {
+			return super.remove(index);
+		}
+
+		@Override
+		public synchronized void clear() {
+			super.clear();
+		}
+
+		@Override
+		public synchronized Script[] toArray() {
+			return super.toArray();
+		}
+
+		@Override
+		public synchronized int hashCode() {
+			return super.hashCode();
+		}
+
+		@Override
+		public synchronized boolean equals(java.lang.Object object) {
+			return super.equals(object);
+		}
+	}
+}
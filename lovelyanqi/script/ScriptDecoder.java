@@ -0,0 +1,657 @@
+/*
+ * Copyright (c) 2018, 2020, LovelyAnQi. All rights reserved.
+ *
+ * GitHub: https://github.com/LovelyAnQi/Script-Framework/
+ * License: GPL 3.0
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package lovelyanqi.script;
+
+/**
+ * Class {@code ScriptDecoder} is the deserialization engine behind
+ * <code>Script::Load()</code>. It decodes the Script byte format from
+ * an in-memory window, from a file mapped window by window, or from an
+ * input stream read in bulk.
+ * <br /><br />
+ * In-memory windows (heap, direct or mapped <code>java.nio.ByteBuffer</code>s)
+ * and mapped files are decoded in place: no copy of the input is made on the
+ * heap, only the decoded Script elements are allocated.
+ * <br /><br />
+ * For streams, bytes are read in blocks into an internal buffer and String
+ * bodies are copied in one piece. When the stream supports
+ * <code>mark()/reset()</code> (e.g. <code>java.io.BufferedInputStream</code>),
+ * the bytes read ahead past the decoded element are handed back to the stream
+ * by {@link #release()}, so the next element stays readable. Other streams are
+ * read exactly as far as the element reaches.
+ * <br /><br />
+ * Both the decimal format and the compact format (version 2, see
+ * {@link ScriptEncoder}) are read, the compact one is recognized by its
+ * header byte.
+ * <br /><br />
+ * In lazy mode (in-memory windows only) an Array or Object is not built up
+ * front: it keeps a {@link Slice} of its serialized bytes and decodes one level
+ * of members the first time its storage is accessed. Untouched subtrees are
+ * only scanned for their length and never allocated.
+ * <br /><br />
+ * <i>Truncated or malformed input is reported with a RuntimeException
+ * instead of an Undefined element.</i>
+ *
+ * @author  LovelyAnQi
+ * @see     lovelyanqi.script.Script#Load(java.io.InputStream)
+ * @see     lovelyanqi.script.ScriptEncoder
+ * @since   3.0
+ */
+final class ScriptDecoder {
+
+	/** Block size of bulk stream reads */
+	private static final int BUFFER_SIZE = 0x2000;
+
+	/** Size of one mapped file window */
+	private static final int MAPPING_SIZE = 0x40000000;
+
+	/** Longest accepted decimal length field */
+	private static final int MAX_DIGITS = 10;
+
+	/** Source stream, or null when decoding an in-memory window or a file */
+	private final java.io.InputStream stream;
+
+	/** Source file, or null when decoding an in-memory window or a stream */
+	private final java.nio.channels.FileChannel channel;
+
+	/** File offset of the current mapped window */
+	private long mapping;
+
+	/** Whether read-ahead bytes can be handed back to the stream */
+	private final boolean markable;
+
+	/** Decoding window: position is the next unread byte, limit the end of valid data */
+	private java.nio.ByteBuffer buffer;
+
+	/** Position of the window where the decoding started, zero once the window moved */
+	private int origin;
+
+	/** Number of input bytes dropped from the window by compaction or remapping */
+	private long discarded;
+
+	/** Copy area for String bodies of buffers without an accessible array */
+	private byte[] scratch;
+
+	/** Whether nested Arrays and Objects are left as serialized slices */
+	private final boolean lazy;
+
+	/** String table of the compact format, null while reading the decimal format */
+	private java.lang.String[] table;
+
+	/** Size of the most recent bulk read, used to hand back read-ahead bytes */
+	private int lastRead;
+
+	/**
+	 * <b>Decoder Constructor</b><br />
+	 * Creates a decoder reading from a stream.
+	 */
+	ScriptDecoder(java.io.InputStream stream) {
+		this.stream = stream;
+		this.channel = null;
+		this.lazy = false;
+		this.markable = stream.markSupported();
+		this.buffer = java.nio.ByteBuffer.allocate(ScriptDecoder.BUFFER_SIZE);
+		this.buffer.limit(0);
+		this.origin = 0;
+	}
+
+	/**
+	 * <b>Decoder Constructor</b><br />
+	 * Creates a decoder reading from the position to the limit of a buffer.
+	 * The buffer itself is not modified.
+	 */
+	ScriptDecoder(java.nio.ByteBuffer window) {
+		this(window, false);
+	}
+
+	/**
+	 * <b>Decoder Constructor</b><br />
+	 * Creates a decoder reading from the position to the limit of a buffer,
+	 * optionally in lazy mode. In lazy mode the buffer content must not change
+	 * as long as the decoded Scripts are in use.
+	 */
+	ScriptDecoder(java.nio.ByteBuffer window, boolean lazy) {
+		this(window, lazy, null);
+	}
+
+	/** Decoder over a lazy slice, continuing in the format the slice was written in */
+	private ScriptDecoder(java.nio.ByteBuffer window, boolean lazy, java.lang.String[] table) {
+		this.table = table;
+		this.stream = null;
+		this.channel = null;
+		this.lazy = lazy;
+		this.markable = false;
+		this.buffer = window.duplicate().order(java.nio.ByteOrder.BIG_ENDIAN);
+		this.origin = window.position();
+	}
+
+	/**
+	 * <b>Decoder Constructor</b><br />
+	 * Creates a decoder reading a file from the given offset. The file is mapped
+	 * read-only one window at a time, so files larger than 2 GB can be decoded.
+	 */
+	ScriptDecoder(java.nio.channels.FileChannel channel, long position) {
+		this.stream = null;
+		this.channel = channel;
+		this.lazy = false;
+		this.markable = false;
+		this.mapping = position;
+		this.buffer = java.nio.ByteBuffer.allocate(0);
+		this.origin = 0;
+	}
+
+	/**
+	 * <i>ScriptDecoder::decode()</i><br />
+	 * Decodes the next Script element.
+	 */
+	Script decode() {
+		try {
+			this.readHeader();
+			return this.decodeElement();
+		} catch (java.io.IOException e) {
+			throw ScriptDecoder.failure(e);
+		}
+	}
+
+	/**
+	 * <i>ScriptDecoder::decodeLazy()</i><br />
+	 * Decodes the next Script element in lazy mode: an Array or Object is returned
+	 * as a serialized slice, after its structure has been checked by one scan.
+	 */
+	Script decodeLazy() {
+		try {
+			this.readHeader();
+			int tag = this.buffer.get(this.buffer.position());
+			if (tag == 'a' || tag == 'o') {
+				return this.sliceElement();
+			}
+			return this.decodeElement();
+		} catch (java.io.IOException e) {
+			throw ScriptDecoder.failure(e);
+		}
+	}
+
+	/**
+	 * <i>ScriptDecoder::skip()</i><br />
+	 * Skips the next Script element without allocating anything for it.
+	 */
+	void skip() {
+		try {
+			this.readHeader();
+			this.skipElement();
+		} catch (java.io.IOException e) {
+			throw ScriptDecoder.failure(e);
+		}
+	}
+
+	/**
+	 * <i>ScriptDecoder::release()</i><br />
+	 * Hands the bytes read ahead past the last decoded element back to the
+	 * stream. Has no effect on in-memory windows and unmarkable streams.
+	 */
+	void release() {
+		int unread = this.buffer.remaining();
+		if (this.stream == null || !this.markable || unread == 0) {
+			return;
+		}
+		try {
+			/** Go back to the start of the last bulk read and consume what was used of it */
+			this.stream.reset();
+			long used = this.lastRead - unread;
+			while (used > 0) {
+				long skipped = this.stream.skip(used);
+				if (skipped <= 0) {
+					throw new java.io.EOFException("Stream shrank while handing back read-ahead bytes");
+				}
+				used -= skipped;
+			}
+		} catch (java.io.IOException e) {
+			throw ScriptDecoder.failure(e);
+		}
+		this.buffer.limit(this.buffer.position());
+	}
+
+	/**
+	 * <i>ScriptDecoder::offset()</i><br />
+	 * Returns the number of bytes consumed since the decoder was created.
+	 */
+	long offset() {
+		return this.discarded + this.buffer.position() - this.origin;
+	}
+
+	/**
+	 * Makes sure an element follows and reads the compact format header with its
+	 * string table if there is one.
+	 */
+	void readHeader() throws java.io.IOException {
+		if (!this.request(1)) {
+			throw this.truncated("a Script element");
+		}
+		if ((this.buffer.get(this.buffer.position()) & 0xFF) != ScriptEncoder.COMPACT_HEADER) {
+			return;
+		}
+		
+		this.buffer.get();
+		this.table = new java.lang.String[0];			//Lengths are varints from here on
+		int count = this.readLength();
+		java.util.List<java.lang.String> nativeTable = new java.util.ArrayList<java.lang.String>(this.presize(count));
+		while (count-- > 0) {
+			nativeTable.add(this.readString(this.readLength()));
+		}
+		this.table = nativeTable.toArray(this.table);
+		
+		if (!this.request(1)) {
+			throw this.truncated("a Script element");
+		}
+	}
+
+	/** Element dispatcher, the tag byte is known to be available */
+	private Script decodeElement() throws java.io.IOException {
+		int tag = this.buffer.get();
+		switch (tag) {
+		case 'u':
+			return Script.Undefined();
+		case 'n':
+			return Script.Null();
+		case 't':
+			return Script.Boolean(true);
+		case 'f':
+			return Script.Boolean(false);
+		case 'i':
+			return Script.Number(this.readNumber());
+		case 's':
+			return Script.String(this.readString(this.readLength()));
+		case 'r':
+			return Script.String(this.readReference());
+		case 'a': {
+			int length = this.readLength();
+			ScriptArray nativeArray = new ScriptArray(this.presize(length));
+			while (length-- > 0) {
+				nativeArray.add(this.decodeNext());
+			}
+			return new Script(nativeArray, Script.Type.Array);
+		}
+		case 'o': {
+			int length = this.readLength();
+			java.util.Map<Script, Script> nativeObject = new ScriptObject(this.presize(length));
+			while (length-- > 0) {
+				Script key = this.decodeNext();
+				nativeObject.put(key, this.decodeNext());
+			}
+			return new Script(nativeObject, Script.Type.Object);
+		}
+		default:
+			throw this.malformed("Unknown type tag 0x" + java.lang.Integer.toHexString(tag & 0xFF),
+					this.offset() - 1);
+		}
+	}
+
+	/** Reads the next tag byte of an element that must be present */
+	int readTag() throws java.io.IOException {
+		if (!this.request(1)) {
+			throw this.truncated("a nested Script element");
+		}
+		return this.buffer.get();
+	}
+
+	/** Reads the body of a Number, the tag is already consumed */
+	int readNumber() throws java.io.IOException {
+		if (this.table != null) {
+			int zigzag = this.readVarint("a Number");
+			return (zigzag >>> 1) ^ -(zigzag & 1);
+		}
+		if (!this.request(4)) {
+			throw this.truncated("a Number");
+		}
+		return this.buffer.getInt();
+	}
+
+	/** Skips the next element, which must be present */
+	void skipNext() throws java.io.IOException {
+		if (!this.request(1)) {
+			throw this.truncated("a nested Script element");
+		}
+		this.skipElement();
+	}
+
+	/** Decodes a nested element, whose absence means the input was cut short */
+	private Script decodeNext() throws java.io.IOException {
+		if (!this.request(1)) {
+			throw this.truncated("a nested Script element");
+		}
+		if (this.lazy) {
+			int tag = this.buffer.get(this.buffer.position());
+			if (tag == 'a' || tag == 'o') {
+				return this.sliceElement();
+			}
+		}
+		return this.decodeElement();
+	}
+
+	/** Scans an Array or Object and wraps its bytes, the tag byte is known to be available */
+	private Script sliceElement() throws java.io.IOException {
+		java.nio.ByteBuffer nativeBuffer = this.buffer;
+		int start = nativeBuffer.position();
+		Script.Type type = nativeBuffer.get(start) == 'a' ? Script.Type.Array : Script.Type.Object;
+		this.skipElement();
+		return new Script(new Slice(nativeBuffer, start, nativeBuffer.position(), this.table), type);
+	}
+
+	/** Skips one element, the tag byte is known to be available */
+	private void skipElement() throws java.io.IOException {
+		int tag = this.buffer.get();
+		switch (tag) {
+		case 'u':
+		case 'n':
+		case 't':
+		case 'f':
+			break;
+		case 'i':
+			if (this.table != null) {
+				this.readVarint("a Number");
+			} else {
+				this.skipBytes(4, "a Number");
+			}
+			break;
+		case 's':
+			int length = this.readLength();
+			this.skipBytes(length, "a String of " + length + " bytes");
+			break;
+		case 'r':
+			this.readReference();
+			break;
+		case 'a':
+		case 'o':
+			/** Objects hold two elements per member */
+			long members = tag == 'a' ? this.readLength() : 2L * this.readLength();
+			while (members-- > 0) {
+				if (!this.request(1)) {
+					throw this.truncated("a nested Script element");
+				}
+				this.skipElement();
+			}
+			break;
+		default:
+			throw this.malformed("Unknown type tag 0x" + java.lang.Integer.toHexString(tag & 0xFF),
+					this.offset() - 1);
+		}
+	}
+
+	/** Skips a run of bytes, refilling the window as needed */
+	void skipBytes(long count, java.lang.String expected) throws java.io.IOException {
+		while (count > 0) {
+			if (!this.request(1)) {
+				throw this.truncated(expected);
+			}
+			java.nio.ByteBuffer nativeBuffer = this.buffer;
+			int step = (int)java.lang.Math.min(count, nativeBuffer.remaining());
+			nativeBuffer.position(nativeBuffer.position() + step);
+			count -= step;
+		}
+	}
+
+	/** Reads the ASCII decimal length terminated by '*', or a varint in the compact format */
+	int readLength() throws java.io.IOException {
+		long start = this.offset();
+		if (this.table != null) {
+			int length = this.readVarint("a length field");
+			if (length < 0) {
+				throw this.malformed("Length field out of range: " + (length & 0xFFFFFFFFL), start);
+			}
+			return length;
+		}
+		long length = 0;
+		for (int digits = 0; ; digits++) {
+			if (!this.request(1)) {
+				throw this.truncated("a length field");
+			}
+			int digit = this.buffer.get();
+			if (digit == '*' && digits != 0) {
+				break;
+			}
+			if (digit < '0' || digit > '9' || digits == ScriptDecoder.MAX_DIGITS) {
+				throw this.malformed("Illegal length field", start);
+			}
+			length = length * 10 + (digit - '0');
+		}
+		if (length > java.lang.Integer.MAX_VALUE) {
+			throw this.malformed("Length field out of range: " + length, start);
+		}
+		return (int)length;
+	}
+
+	/** Reads an unsigned LEB128 varint of at most 32 bits, which may come out negative: lengths check it */
+	private int readVarint(java.lang.String expected) throws java.io.IOException {
+		long start = this.offset();
+		int value = 0;
+		for (int shift = 0; ; shift += 7) {
+			if (!this.request(1)) {
+				throw this.truncated(expected);
+			}
+			int part = this.buffer.get();
+			if (shift == 28 && (part & 0xF0) != 0) {
+				throw this.malformed("Varint out of range", start);
+			}
+			value |= (part & 0x7F) << shift;
+			if ((part & 0x80) == 0) {
+				return value;
+			}
+		}
+	}
+
+	/** Reads a string table reference of the compact format */
+	java.lang.String readReference() throws java.io.IOException {
+		long start = this.offset() - 1;
+		if (this.table == null) {
+			throw this.malformed("Unknown type tag 0x72", start);
+		}
+		int index = this.readVarint("a string reference");
+		if (index < 0 || index >= this.table.length) {
+			throw this.malformed("String reference " + index + " out of the table", start);
+		}
+		return this.table[index];
+	}
+
+	/** Reads a UTF-8 String body of the given length in one copy */
+	java.lang.String readString(int length) throws java.io.IOException {
+		java.nio.ByteBuffer nativeBuffer = this.buffer;
+
+		/** Body fits in the window */
+		boolean windowed = this.stream == null || length <= nativeBuffer.capacity();
+		if (windowed && this.request(length)) {
+			nativeBuffer = this.buffer;				//Remapping may have replaced the window
+			java.lang.String stringValue;
+			if (nativeBuffer.hasArray()) {
+				stringValue = new java.lang.String(nativeBuffer.array(),
+						nativeBuffer.arrayOffset() + nativeBuffer.position(), length,
+						java.nio.charset.StandardCharsets.UTF_8);
+				nativeBuffer.position(nativeBuffer.position() + length);
+			} else {
+				/** Direct and mapped windows: one bulk copy into a reused area */
+				if (this.scratch == null || this.scratch.length < length) {
+					this.scratch = new byte[java.lang.Math.max(length, 0x100)];
+				}
+				nativeBuffer.get(this.scratch, 0, length);
+				stringValue = new java.lang.String(this.scratch, 0, length, java.nio.charset.StandardCharsets.UTF_8);
+			}
+			return stringValue;
+		}
+
+		/** Body is larger than the window: drain the window, read the rest straight from the stream */
+		if (windowed) {
+			throw this.truncated("a String of " + length + " bytes");
+		}
+		byte[] stringBytes = new byte[length];
+		int buffered = nativeBuffer.remaining();
+		nativeBuffer.get(stringBytes, 0, buffered);
+		int read = buffered;
+		for (int count; read < length && (count = this.stream.read(stringBytes, read, length - read)) > 0; ) {
+			read += count;
+		}
+		this.discarded += read - buffered;
+		if (read != length) {
+			throw this.truncated("a String of " + length + " bytes");
+		}
+		return new java.lang.String(stringBytes, java.nio.charset.StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Makes sure that at least the given number of bytes can be read from
+	 * the window, refilling it from the stream if needed.
+	 */
+	private boolean request(int required) throws java.io.IOException {
+		java.nio.ByteBuffer nativeBuffer = this.buffer;
+		if (nativeBuffer.remaining() >= required) {
+			return true;
+		}
+		if (this.channel != null) {
+			return this.remap(required);
+		}
+		if (this.stream == null) {
+			return false;
+		}
+
+		/** Move the unread bytes to the front of the window */
+		this.discarded += nativeBuffer.position() - this.origin;
+		this.origin = 0;
+		nativeBuffer.compact();
+
+		/**
+		 * A markable stream is read ahead as far as the window allows and marked,
+		 * so the surplus can be handed back. Otherwise read exactly what is needed.
+		 */
+		int capacity = this.markable ? nativeBuffer.remaining() : required - nativeBuffer.position();
+		if (this.markable) {
+			this.stream.mark(capacity);
+		}
+		int total = 0, read;
+		byte[] array = nativeBuffer.array();
+		while (nativeBuffer.position() < required
+				&& (read = this.stream.read(array, nativeBuffer.position(), capacity - total)) > 0) {
+			nativeBuffer.position(nativeBuffer.position() + read);
+			total += read;
+		}
+		this.lastRead = total;
+		nativeBuffer.flip();
+
+		return nativeBuffer.remaining() >= required;
+	}
+
+	/**
+	 * Maps the next window of the file, starting at the first unread byte
+	 * and large enough for the requested number of bytes.
+	 */
+	private boolean remap(int required) throws java.io.IOException {
+		java.nio.ByteBuffer nativeBuffer = this.buffer;
+		long start = this.mapping + nativeBuffer.position();
+		long available = this.channel.size() - start;
+		if (available < required) {
+			return false;
+		}
+
+		this.discarded += nativeBuffer.position() - this.origin;
+		this.origin = 0;
+		this.mapping = start;
+		long size = java.lang.Math.min(available, java.lang.Math.max(ScriptDecoder.MAPPING_SIZE, required));
+		this.buffer = this.channel.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, start, size);
+		return true;
+	}
+
+	/** Initial capacity for a container, not trusting the length field beyond the input at hand */
+	private int presize(int length) {
+		int available = this.stream == null && this.channel == null ?
+				this.buffer.remaining() : ScriptDecoder.BUFFER_SIZE;
+		return java.lang.Math.min(length, available);
+	}
+
+	/** Input ended in the middle of an element */
+	private java.lang.RuntimeException truncated(java.lang.String expected) {
+		return new java.lang.RuntimeException(
+				"ScriptFormatException\n\t" +
+				"Truncated input: expected " + expected + " at byte " + this.offset()
+		);
+	}
+
+	/** Input is not in the Script byte format */
+	java.lang.RuntimeException malformed(java.lang.String reason, long offset) {
+		return new java.lang.RuntimeException(
+				"ScriptFormatException\n\t" +
+				reason + " at byte " + offset
+		);
+	}
+
+	/** I/O failures of the underlying stream */
+	static java.lang.RuntimeException failure(java.io.IOException e) {
+		return new java.lang.RuntimeException(
+				"IOException\n\t" +
+				"Unable to read the Script stream: " + e.getMessage(), e
+		);
+	}
+
+	/**
+	 * Class {@code Slice} is the storage of a lazily loaded Array or Object:
+	 * the bytes of its serialized form, which stay valid and unchanged.
+	 */
+	static final class Slice {
+
+		/** Serialized input shared by all slices of one load */
+		private final java.nio.ByteBuffer source;
+
+		/** Bounds of the element in the source */
+		private final int start, end;
+
+		/** String table of the compact format, null for the decimal format */
+		private final java.lang.String[] table;
+
+		Slice(java.nio.ByteBuffer source, int start, int end, java.lang.String[] table) {
+			this.source = source;
+			this.start = start;
+			this.end = end;
+			this.table = table;
+		}
+
+		/** Whether the slice is in the decimal format and can be copied verbatim */
+		boolean isPlain() {
+			return this.table == null;
+		}
+
+		/** Serialized length of the element */
+		int size() {
+			return this.end - this.start;
+		}
+
+		/** A fresh view of the serialized element */
+		java.nio.ByteBuffer window() {
+			java.nio.ByteBuffer window = this.source.duplicate();
+			window.limit(this.end).position(this.start);
+			return window;
+		}
+
+		/** Decodes one level of the element, nested composites become slices in turn */
+		java.lang.Object materialize() {
+			return new ScriptDecoder(this.window(), true, this.table).decode().script;
+		}
+	}
+}
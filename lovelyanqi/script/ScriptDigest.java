@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2018, 2020, LovelyAnQi. All rights reserved.
+ *
+ * GitHub: https://github.com/LovelyAnQi/Script-Framework/
+ * License: GPL 3.0
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package lovelyanqi.script;
+
+/**
+ * Class {@code ScriptDigest} is the content hash behind <code>Script::digest()</code>:
+ * MurmurHash3 x64 128-bit with seed 0, computed incrementally as an output stream
+ * over the canonical serialized bytes of a Script.
+ * <br /><br />
+ * Bytes are consumed in 16-byte blocks as they arrive, so hashing needs no
+ * more memory than the fixed buffer of the encoder feeding it.
+ *
+ * @author  LovelyAnQi
+ * @see     lovelyanqi.script.Script#digest()
+ * @since   3.0
+ */
+final class ScriptDigest extends java.io.OutputStream {
+
+	/** Mixing constants of MurmurHash3 x64 128 */
+	private static final long C1 = 0x87C37B91114253D5L;
+	private static final long C2 = 0x4CF5AD432745937FL;
+
+	/** Hash state */
+	private long h1;
+	private long h2;
+
+	/** Bytes of an incomplete block */
+	private final byte[] tail = new byte[16];
+
+	/** Number of bytes in the incomplete block */
+	private int pending;
+
+	/** Total number of bytes hashed */
+	private long length;
+
+	/**
+	 * <i>ScriptDigest::of(Script)</i><br />
+	 * Returns the hash of the canonical serialized form of a Script, which is
+	 * streamed through the digest and never materialized.
+	 */
+	static long[] of(Script script) {
+		ScriptDigest digest = new ScriptDigest();
+		ScriptEncoder encoder = new ScriptEncoder(digest, ScriptEncoder.SINK_SIZE).canonical();
+		encoder.encode(script);
+		try {
+			encoder.flush();
+		} catch (java.io.IOException e) {
+			throw ScriptDecoder.failure(e);			//Never thrown by a digest
+		}
+		return digest.finish();
+	}
+
+	@Override
+	public void write(int value) {
+		this.tail[this.pending++] = (byte)value;
+		this.length++;
+		if (this.pending == 16) {
+			this.block(this.tail, 0);
+			this.pending = 0;
+		}
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int count) {
+		this.length += count;
+		int end = offset + count;
+
+		/** Complete the pending block first */
+		if (this.pending > 0) {
+			int take = java.lang.Math.min(16 - this.pending, count);
+			java.lang.System.arraycopy(bytes, offset, this.tail, this.pending, take);
+			this.pending += take;
+			offset += take;
+			if (this.pending < 16) {
+				return;
+			}
+			this.block(this.tail, 0);
+			this.pending = 0;
+		}
+
+		for (; end - offset >= 16; offset += 16) {
+			this.block(bytes, offset);
+		}
+		this.pending = end - offset;
+		java.lang.System.arraycopy(bytes, offset, this.tail, 0, this.pending);
+	}
+
+	/**
+	 * <i>ScriptDigest::finish()</i><br />
+	 * Returns the two 64-bit halves of the hash of everything written.
+	 */
+	long[] finish() {
+		long k1 = 0;
+		long k2 = 0;
+		for (int index = this.pending - 1; index >= 8; index--) {
+			k2 = k2 << 8 | (this.tail[index] & 0xFF);
+		}
+		for (int index = java.lang.Math.min(this.pending, 8) - 1; index >= 0; index--) {
+			k1 = k1 << 8 | (this.tail[index] & 0xFF);
+		}
+		long x1 = this.h1;
+		long x2 = this.h2;
+		if (this.pending > 8) {
+			x2 ^= java.lang.Long.rotateLeft(k2 * ScriptDigest.C2, 33) * ScriptDigest.C1;
+		}
+		if (this.pending > 0) {
+			x1 ^= java.lang.Long.rotateLeft(k1 * ScriptDigest.C1, 31) * ScriptDigest.C2;
+		}
+
+		x1 ^= this.length;
+		x2 ^= this.length;
+		x1 += x2;
+		x2 += x1;
+		x1 = ScriptDigest.mix(x1);
+		x2 = ScriptDigest.mix(x2);
+		x1 += x2;
+		x2 += x1;
+		return new long[] { x1, x2 };
+	}
+
+	/** One 16-byte block, two little-endian longs */
+	private void block(byte[] bytes, int offset) {
+		long k1 = ScriptDigest.littleEndian(bytes, offset);
+		long k2 = ScriptDigest.littleEndian(bytes, offset + 8);
+
+		this.h1 ^= java.lang.Long.rotateLeft(k1 * ScriptDigest.C1, 31) * ScriptDigest.C2;
+		this.h1 = java.lang.Long.rotateLeft(this.h1, 27) + this.h2;
+		this.h1 = this.h1 * 5 + 0x52DCE729;
+
+		this.h2 ^= java.lang.Long.rotateLeft(k2 * ScriptDigest.C2, 33) * ScriptDigest.C1;
+		this.h2 = java.lang.Long.rotateLeft(this.h2, 31) + this.h1;
+		this.h2 = this.h2 * 5 + 0x38495AB5;
+	}
+
+	/** Final avalanche of a half */
+	private static long mix(long value) {
+		value ^= value >>> 33;
+		value *= 0xFF51AFD7ED558CCDL;
+		value ^= value >>> 33;
+		value *= 0xC4CEB9FE1A85EC53L;
+		value ^= value >>> 33;
+		return value;
+	}
+
+	private static long littleEndian(byte[] bytes, int offset) {
+		long value = 0;
+		for (int index = offset + 7; index >= offset; index--) {
+			value = value << 8 | (bytes[index] & 0xFF);
+		}
+		return value;
+	}
+}
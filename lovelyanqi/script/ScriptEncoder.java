@@ -0,0 +1,900 @@
+/*
+ * Copyright (c) 2018, 2020, LovelyAnQi. All rights reserved.
+ *
+ * GitHub: https://github.com/LovelyAnQi/Script-Framework/
+ * License: GPL 3.0
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package lovelyanqi.script;
+
+/**
+ * Class {@code ScriptEncoder} is the serialization engine behind
+ * <code>Script::passbytes()</code>. It writes the Script byte format
+ * straight into a growable primitive buffer instead of boxing every
+ * byte into a <code>java.util.Vector&lt;Byte&gt;</code>.
+ * <br /><br />
+ * Fixed length format:<br />
+ * <i>Undefined = u, Null = n, Boolean = t/f, Number = i(00000000)(16)</i>
+ * <br /><br />
+ * Indefinite length format:<br />
+ * <i>String = s[Dec]*[string], Array = a[Dec]*[arrays], Object = o[Dec]*[objects]</i>
+ * <br /><br />
+ * <i>{@link #sizeOf(Script)} walks the tree once and returns the exact
+ * serialized length, so an encoder presized with it never grows.</i>
+ * <br /><br />
+ * Compact format (version 2), written by {@link #encodeCompact(Script)}:<br />
+ * <i>Header = 0x82 [Var] [Var][string]..., the string table of Object keys used more
+ * than once, followed by the element.</i><br />
+ * <i>Number = i[ZigZag Var], String = s[Var][string] or r[Var](table index),
+ * Array = a[Var][arrays], Object = o[Var][objects]</i><br />
+ * <i>[Var] is an unsigned LEB128 varint, other tags are unchanged.</i>
+ *
+ * @author  LovelyAnQi
+ * @see     lovelyanqi.script.Script#passbytes()
+ * @since   3.0
+ */
+final class ScriptEncoder {
+
+	/** First byte of the compact format, never a tag of the decimal format */
+	static final int COMPACT_HEADER = 0x82;
+
+	/** Size of the fixed buffer of an encoder writing to a stream or channel */
+	static final int SINK_SIZE = 0x2000;
+
+	/** Members below which a container is not worth encoding in parallel */
+	private static final int PARALLEL_THRESHOLD = 0x800;
+
+	/** Smallest number of members encoded by one parallel task */
+	private static final int PARALLEL_CHUNK = 0x100;
+
+	/** Output buffer, grown on demand */
+	private byte[] buffer;
+
+	/** Next write position in the buffer */
+	private int position;
+
+	/** String table of the compact format, null while writing the decimal format */
+	private java.util.Map<java.lang.String, java.lang.Integer> table;
+
+	/** Whether Object members are written in the order of their serialized keys */
+	private boolean canonical;
+
+	/** Stream the buffer is flushed to when full, null when the buffer grows instead */
+	private java.io.OutputStream stream;
+
+	/** Channel the buffer is flushed to when full, null when the buffer grows instead */
+	private java.nio.channels.WritableByteChannel channel;
+
+	/** Number of bytes already flushed to the stream or channel */
+	private long flushed;
+
+	/**
+	 * <b>Encoder Constructor</b><br />
+	 * Creates an encoder over a new buffer of the given initial capacity.
+	 */
+	ScriptEncoder(int capacity) {
+		this.buffer = new byte[capacity < 0x10 ? 0x10 : capacity];
+		this.position = 0;
+	}
+
+	/**
+	 * <b>Encoder Constructor</b><br />
+	 * Creates an encoder writing into an existing array from the given offset.
+	 * The caller is responsible for having checked the remaining space.
+	 */
+	ScriptEncoder(byte[] buffer, int offset) {
+		this.buffer = buffer;
+		this.position = offset;
+	}
+
+	/**
+	 * <b>Encoder Constructor</b><br />
+	 * Creates an encoder flushing a fixed buffer of the given size to a stream
+	 * whenever it is full. The buffer never grows.
+	 */
+	ScriptEncoder(java.io.OutputStream stream, int capacity) {
+		this(capacity);
+		this.stream = stream;
+	}
+
+	/**
+	 * <b>Encoder Constructor</b><br />
+	 * Creates an encoder flushing a fixed buffer of the given size to a channel
+	 * whenever it is full. The buffer never grows.
+	 */
+	ScriptEncoder(java.nio.channels.WritableByteChannel channel, int capacity) {
+		this(capacity);
+		this.channel = channel;
+	}
+
+	/**
+	 * <i>ScriptEncoder::sizeOf(Script)</i><br />
+	 * Returns the exact number of bytes <code>encode(Script)</code> writes
+	 * for the given element, without allocating anything.
+	 */
+	static int sizeOf(Script script) {
+		/** Lazily loaded composites keep their serialized form */
+		if (script.script instanceof ScriptDecoder.Slice && ((ScriptDecoder.Slice)script.script).isPlain()) {
+			return ((ScriptDecoder.Slice)script.script).size();
+		}
+		
+		switch (script.type) {
+		case Undefined:
+		case Null:
+		case Boolean:
+			return 1;
+		case Number:
+			return 5;
+		case String:
+			int stringLength = ScriptEncoder.utf8Length((java.lang.String)script.script);
+			return 2 + ScriptEncoder.digits(stringLength) + stringLength;
+		case Array: {
+			ScriptArray nativeArray = script.readArray();
+			int size = nativeArray.size();
+			long total = 2 + ScriptEncoder.digits(size);
+			if (nativeArray.elements == null) {
+				return ScriptEncoder.checkSize(total + (nativeArray.numeric() ? 5L : 1L) * size);
+			}
+			for (int i = 0; i < size; i++) {
+				total += ScriptEncoder.sizeOf(nativeArray.get(i));
+			}
+			return ScriptEncoder.checkSize(total);
+		}
+		case Object: {
+			java.util.Map<Script, Script> nativeObject = script.readObject();
+			long total = 2 + ScriptEncoder.digits(nativeObject.size());
+			for (java.util.Map.Entry<Script, Script> nativeEntry : nativeObject.entrySet()) {
+				total += ScriptEncoder.sizeOf(nativeEntry.getKey());
+				total += ScriptEncoder.sizeOf(nativeEntry.getValue());
+			}
+			return ScriptEncoder.checkSize(total);
+		}
+		default:
+			throw ScriptEncoder.unsupported(script);
+		}
+	}
+
+	/**
+	 * <i>ScriptEncoder::encode(Script)</i><br />
+	 * Appends the serialized form of the given element to the buffer.
+	 */
+	void encode(Script script) {
+		/** Untouched lazy composites are copied as they were loaded, if the format and order are the same */
+		if (script.script instanceof ScriptDecoder.Slice && this.table == null && !this.canonical
+				&& ((ScriptDecoder.Slice)script.script).isPlain()) {
+			this.writeSlice((ScriptDecoder.Slice)script.script);
+			return;
+		}
+		
+		switch (script.type) {
+		case Undefined:
+			this.ensure(1);
+			this.buffer[this.position++] = 'u';
+			break;
+		case Null:
+			this.ensure(1);
+			this.buffer[this.position++] = 'n';
+			break;
+		case Boolean:
+			this.ensure(1);
+			this.buffer[this.position++] = (java.lang.Boolean)script.script ? (byte)'t' : (byte)'f';
+			break;
+		case Number:
+			this.writeNumber((java.lang.Integer)script.script);
+			break;
+		case String:
+			this.writeString((java.lang.String)script.script);
+			break;
+		case Array: {
+			ScriptArray nativeArray = script.readArray();
+			int size = nativeArray.size();
+			this.writeHeader('a', size);
+			if (nativeArray.elements == null) {
+				this.writePacked(nativeArray);
+				break;
+			}
+			for (int i = 0; i < size; i++) {
+				this.encode(nativeArray.get(i));
+			}
+			break;
+		}
+		case Object: {
+			java.util.Map<Script, Script> nativeObject = script.readObject();
+			if (this.canonical) {
+				this.writeSorted(nativeObject);
+				break;
+			}
+			this.writeHeader('o', nativeObject.size());
+			for (java.util.Map.Entry<Script, Script> nativeEntry : nativeObject.entrySet()) {
+				this.encode(nativeEntry.getKey());
+				this.encode(nativeEntry.getValue());
+			}
+			break;
+		}
+		default:
+			throw ScriptEncoder.unsupported(script);
+		}
+	}
+
+	/**
+	 * <i>ScriptEncoder::encodeCompact(Script)</i><br />
+	 * Appends the given element in the compact format: the header with the
+	 * string table, then the element itself.
+	 */
+	void encodeCompact(Script script) {
+		this.openTable(script, !this.isSink());
+		this.encode(script);
+		this.table = null;
+	}
+
+	/**
+	 * <i>ScriptEncoder::encodeParallel(Script, int, java.util.concurrent.ForkJoinPool)</i><br />
+	 * Returns the serialized form of the given element in the given format. The
+	 * children of a wide Array or Object are cut into chunks which are encoded on the
+	 * pool into buffers of their own, then joined in order: the bytes are the same as
+	 * those of the sequential encoder.
+	 */
+	static byte[] encodeParallel(Script script, int format, java.util.concurrent.ForkJoinPool pool) {
+		boolean compact = format == Script.FormatV2;
+		Script[] children = ScriptEncoder.children(script, compact);
+		if (children == null || children.length < ScriptEncoder.PARALLEL_THRESHOLD) {
+			return script.passbytes(format);
+		}
+
+		/** Header of the container on this thread, the members on the pool */
+		ScriptEncoder encoder = new ScriptEncoder(0x40);
+		if (compact) {
+			encoder.openTable(script, false);
+		}
+		boolean object = script.type == Script.Type.Object;
+		encoder.writeHeader(object ? 'o' : 'a', object ? children.length >> 1 : children.length);
+
+		int chunk = java.lang.Math.max(ScriptEncoder.PARALLEL_CHUNK,
+				children.length / (pool.getParallelism() << 2) + 1) & ~1;		//Keys stay with their values
+		ScriptEncoder[] parts = new ScriptEncoder[(children.length + chunk - 1) / chunk];
+		pool.invoke(new Chunks(children, chunk, encoder.table, parts, 0, parts.length));
+
+		/** Joined in order into one exactly sized array */
+		long total = encoder.position;
+		for (ScriptEncoder part : parts) {
+			total += part.position;
+		}
+		byte[] bytes = new byte[ScriptEncoder.checkSize(total)];
+		int seeker = encoder.position;
+		java.lang.System.arraycopy(encoder.buffer, 0, bytes, 0, seeker);
+		for (ScriptEncoder part : parts) {
+			java.lang.System.arraycopy(part.buffer, 0, bytes, seeker, part.position);
+			seeker += part.position;
+		}
+		return bytes;
+	}
+
+	/** Members of an Array, or keys and values of an Object in iteration order, null for anything else */
+	private static Script[] children(Script script, boolean compact) {
+		if (script.script instanceof ScriptDecoder.Slice && !compact
+				&& ((ScriptDecoder.Slice)script.script).isPlain()) {
+			return null;			//Copied as it was loaded
+		}
+		if (script.type == Script.Type.Array) {
+			ScriptArray nativeArray = script.readArray();
+			return nativeArray.elements == null ? null : nativeArray.toArray();	//Packed values are written at once
+		}
+		if (script.type != Script.Type.Object) {
+			return null;
+		}
+		java.util.Map<Script, Script> nativeObject = script.readObject();
+		Script[] children = new Script[nativeObject.size() << 1];
+		int index = 0;
+		for (java.util.Map.Entry<Script, Script> nativeEntry : nativeObject.entrySet()) {
+			children[index++] = nativeEntry.getKey();
+			children[index++] = nativeEntry.getValue();
+		}
+		return children;
+	}
+
+	/** Chunks of members encoded on a pool, the range is halved until it is a single chunk */
+	private static final class Chunks extends java.util.concurrent.RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Script[] children;
+		private final int chunk;
+		private final java.util.Map<java.lang.String, java.lang.Integer> table;
+		private final ScriptEncoder[] parts;
+		private final int from;
+		private final int to;
+
+		Chunks(Script[] children, int chunk, java.util.Map<java.lang.String, java.lang.Integer> table,
+				ScriptEncoder[] parts, int from, int to) {
+			this.children = children;
+			this.chunk = chunk;
+			this.table = table;
+			this.parts = parts;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from > 1) {
+				int middle = (this.from + this.to) >>> 1;
+				java.util.concurrent.ForkJoinTask.invokeAll(
+						new Chunks(this.children, this.chunk, this.table, this.parts, this.from, middle),
+						new Chunks(this.children, this.chunk, this.table, this.parts, middle, this.to));
+				return;
+			}
+
+			/** The string table is only read here, sharing it is safe */
+			ScriptEncoder part = new ScriptEncoder(ScriptEncoder.SINK_SIZE);
+			part.table = this.table;
+			int end = java.lang.Math.min(this.children.length, (this.from + 1) * this.chunk);
+			for (int index = this.from * this.chunk; index < end; index++) {
+				part.encode(this.children[index]);
+			}
+			this.parts[this.from] = part;
+		}
+	}
+
+	/**
+	 * Key census of the compact format, then its header with the string table.
+	 * <br />
+	 * Object keys seen more than once go into the table.
+	 */
+	private void openTable(Script script, boolean presize) {
+		java.util.Map<java.lang.String, java.lang.Integer> census =
+				new java.util.LinkedHashMap<java.lang.String, java.lang.Integer>();
+		long estimate = ScriptEncoder.census(script, census);
+		
+		this.table = new java.util.HashMap<java.lang.String, java.lang.Integer>();
+		for (java.util.Map.Entry<java.lang.String, java.lang.Integer> censusEntry : census.entrySet()) {
+			if (censusEntry.getValue() > 1) {
+				this.table.put(censusEntry.getKey(), this.table.size());
+			}
+		}
+		if (presize) {
+			this.ensure(ScriptEncoder.checkSize(estimate));
+		}
+		
+		/** Table entries are written in index order, which is the order of first use */
+		this.ensure(6);
+		this.buffer[this.position++] = (byte)ScriptEncoder.COMPACT_HEADER;
+		this.writeVarint(this.table.size());
+		for (java.lang.String key : census.keySet()) {
+			if (this.table.containsKey(key)) {
+				this.writeUtf8(key);
+			}
+		}
+	}
+
+	/**
+	 * <i>ScriptEncoder::canonical()</i><br />
+	 * Switches the encoder to the canonical order of the decimal format: the members of
+	 * every Object are written by ascending unsigned bytes of their serialized keys, and
+	 * those of value Undefined are left out, so equal Scripts always produce the same
+	 * bytes. Returns this encoder.
+	 */
+	ScriptEncoder canonical() {
+		this.canonical = true;
+		return this;
+	}
+
+	/**
+	 * <i>ScriptEncoder::checkFormat(int)</i><br />
+	 * Throws IllegalArgumentException unless the given format is
+	 * <code>Script.FormatV1</code> or <code>Script.FormatV2</code>.
+	 */
+	static void checkFormat(int format) {
+		if (format != Script.FormatV1 && format != Script.FormatV2) {
+			throw new IllegalArgumentException(
+					"Unknown serialization format: " + format
+			);
+		}
+	}
+
+	/**
+	 * <i>ScriptEncoder::toByteArray()</i><br />
+	 * Returns the encoded bytes. When the encoder was presized exactly the
+	 * buffer itself is returned and no copy is made.
+	 */
+	byte[] toByteArray() {
+		if (this.position == this.buffer.length) {
+			return this.buffer;
+		}
+		return java.util.Arrays.copyOf(this.buffer, this.position);
+	}
+
+	/**
+	 * <i>ScriptEncoder::flush()</i><br />
+	 * Writes the buffered bytes to the stream or channel and empties the buffer.
+	 * I/O failures are rethrown as they were raised, see <code>encode(Script)</code>.
+	 */
+	void flush() throws java.io.IOException {
+		try {
+			this.drain();
+		} catch (java.io.UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * <i>ScriptEncoder::flushed()</i><br />
+	 * Returns the number of bytes written to the stream or channel so far.
+	 */
+	long flushed() {
+		return this.flushed;
+	}
+
+	/**
+	 * <i>ScriptEncoder::writeOut(java.io.OutputStream)</i><br />
+	 * Writes the buffered bytes to the given stream and empties the buffer.
+	 */
+	void writeOut(java.io.OutputStream stream) throws java.io.IOException {
+		stream.write(this.buffer, 0, this.position);
+		this.flushed += this.position;
+		this.position = 0;
+	}
+
+	/**
+	 * <i>ScriptEncoder::writeOut(java.nio.channels.WritableByteChannel)</i><br />
+	 * Writes the buffered bytes to the given channel and empties the buffer.
+	 */
+	void writeOut(java.nio.channels.WritableByteChannel channel) throws java.io.IOException {
+		java.nio.ByteBuffer pending = java.nio.ByteBuffer.wrap(this.buffer, 0, this.position);
+		while (pending.hasRemaining()) {
+			channel.write(pending);
+		}
+		this.flushed += this.position;
+		this.position = 0;
+	}
+
+	/**
+	 * <i>ScriptEncoder::reserve(int)</i><br />
+	 * Skips the given number of bytes, to be filled in later with <code>putInt()</code>.
+	 * Returns the position of the first skipped byte.
+	 */
+	int reserve(int count) {
+		this.ensure(count);
+		int start = this.position;
+		this.position += count;
+		return start;
+	}
+
+	/**
+	 * <i>ScriptEncoder::rewind(int)</i><br />
+	 * Drops everything written from the given position on.
+	 */
+	void rewind(int position) {
+		this.position = position;
+	}
+
+	/**
+	 * <i>ScriptEncoder::putInt(int, int)</i><br />
+	 * Writes a big-endian int at the given position of the buffer.
+	 */
+	void putInt(int at, int value) {
+		byte[] nativeBuffer = this.buffer;
+		nativeBuffer[at] = (byte)(value >> 0x18);
+		nativeBuffer[at + 1] = (byte)(value >> 0x10);
+		nativeBuffer[at + 2] = (byte)(value >> 0x08);
+		nativeBuffer[at + 3] = (byte)value;
+	}
+
+	/**
+	 * <i>ScriptEncoder::writeInt(int)</i><br />
+	 * Appends a big-endian int.
+	 */
+	void writeInt(int value) {
+		this.putInt(this.reserve(4), value);
+	}
+
+	/**
+	 * <i>ScriptEncoder::writeByte(int)</i><br />
+	 * Appends a single byte.
+	 */
+	void writeByte(int value) {
+		this.ensure(1);
+		this.buffer[this.position++] = (byte)value;
+	}
+
+	/**
+	 * <i>ScriptEncoder::update(java.util.zip.Checksum, int)</i><br />
+	 * Feeds the bytes from the given position up to the write position to a checksum.
+	 */
+	void update(java.util.zip.Checksum checksum, int from) {
+		checksum.update(this.buffer, from, this.position - from);
+	}
+
+	/**
+	 * <i>ScriptEncoder::position()</i><br />
+	 * Returns the next write position in the underlying buffer.
+	 */
+	int position() {
+		return this.position;
+	}
+
+	/** Number is identified as i(00000000)(16), or i[ZigZag Var] in the compact format */
+	private void writeNumber(int intValue) {
+		if (this.table != null) {
+			this.ensure(6);
+			this.buffer[this.position++] = 'i';
+			this.writeVarint((intValue << 1) ^ (intValue >> 31));
+			return;
+		}
+		this.ensure(5);
+		byte[] nativeBuffer = this.buffer;
+		int seeker = this.position;
+		nativeBuffer[seeker] = 'i';
+		nativeBuffer[seeker + 1] = (byte)(intValue >> 0x18);
+		nativeBuffer[seeker + 2] = (byte)(intValue >> 0x10);
+		nativeBuffer[seeker + 3] = (byte)(intValue >> 0x08);
+		nativeBuffer[seeker + 4] = (byte)intValue;
+		this.position = seeker + 5;
+	}
+
+	/** Values of a packed Array, without element Scripts */
+	private void writePacked(ScriptArray nativeArray) {
+		int end = nativeArray.head + nativeArray.size();
+		if (nativeArray.numbers != null) {
+			int[] numbers = nativeArray.numbers;
+			for (int i = nativeArray.head; i < end; i++) {
+				this.writeNumber(numbers[i]);
+			}
+			return;
+		}
+		if (nativeArray.memory != null) {
+			/** Off-heap values, read in place */
+			java.nio.IntBuffer memory = nativeArray.memory;
+			for (int i = nativeArray.head; i < end; i++) {
+				this.writeNumber(memory.get(i));
+			}
+			return;
+		}
+		boolean[] booleans = nativeArray.booleans;
+		for (int i = nativeArray.head; i < end; i++) {
+			this.ensure(1);
+			this.buffer[this.position++] = booleans[i] ? (byte)'t' : (byte)'f';
+		}
+	}
+
+	/** Serialized bytes of a lazy composite, one bulk copy */
+	private void writeSlice(ScriptDecoder.Slice slice) {
+		int size = slice.size();
+		if (!this.isSink() || size <= this.buffer.length) {
+			this.ensure(size);
+			slice.window().get(this.buffer, this.position, size);
+			this.position += size;
+			return;
+		}
+
+		/** Larger than the whole buffer, passed through piece by piece */
+		java.nio.ByteBuffer window = slice.window();
+		while (window.hasRemaining()) {
+			this.ensure(1);
+			int count = java.lang.Math.min(window.remaining(), this.buffer.length - this.position);
+			window.get(this.buffer, this.position, count);
+			this.position += count;
+		}
+	}
+
+	/** Object header and members in canonical order, members of value Undefined left out as equals() does */
+	private void writeSorted(java.util.Map<Script, Script> nativeObject) {
+		int size = 0;
+		for (Script value : nativeObject.values()) {
+			if (value.type != Script.Type.Undefined) size++;
+		}
+		this.writeHeader('o', size);
+		
+		final byte[][] keys = new byte[size][];
+		Script[] values = new Script[size];
+		java.lang.Integer[] order = new java.lang.Integer[size];
+		int index = 0;
+		for (java.util.Map.Entry<Script, Script> nativeEntry : nativeObject.entrySet()) {
+			if (nativeEntry.getValue().type == Script.Type.Undefined) {
+				continue;
+			}
+			Script key = nativeEntry.getKey();
+			ScriptEncoder keyEncoder = new ScriptEncoder(ScriptEncoder.sizeOf(key)).canonical();
+			keyEncoder.encode(key);
+			keys[index] = keyEncoder.toByteArray();
+			values[index] = nativeEntry.getValue();
+			order[index] = index;
+			index++;
+		}
+		
+		java.util.Arrays.sort(order, new java.util.Comparator<java.lang.Integer>() {
+			@Override
+			public int compare(java.lang.Integer left, java.lang.Integer right) {
+				return ScriptEncoder.compareUnsigned(keys[left], keys[right]);
+			}
+		});
+		for (int it = 0; it < size; it++) {
+			this.writeBytes(keys[order[it]]);
+			this.encode(values[order[it]]);
+		}
+	}
+
+	/** Raw bytes, written in pieces when they do not fit a fixed buffer */
+	private void writeBytes(byte[] bytes) {
+		for (int from = 0, count; from < bytes.length; from += count) {
+			this.ensure(this.isSink() ? 1 : bytes.length - from);
+			count = java.lang.Math.min(bytes.length - from, this.buffer.length - this.position);
+			java.lang.System.arraycopy(bytes, from, this.buffer, this.position, count);
+			this.position += count;
+		}
+	}
+
+	/** Length header: tag followed by the length field */
+	private void writeHeader(char tag, int length) {
+		this.ensure(1);
+		this.buffer[this.position++] = (byte)tag;
+		this.writeLength(length);
+	}
+
+	/** Length field: ASCII decimal length and the '*' terminator, or a varint in the compact format */
+	private void writeLength(int length) {
+		if (this.table != null) {
+			this.writeVarint(length);
+			return;
+		}
+		int digits = ScriptEncoder.digits(length);
+		this.ensure(digits + 1);
+		byte[] nativeBuffer = this.buffer;
+
+		/** Decimal digits are written backwards from the last position */
+		int seeker = this.position + digits - 1;
+		do {
+			nativeBuffer[seeker--] = (byte)('0' + length % 10);
+			length /= 10;
+		} while (length != 0);
+
+		this.position += digits;
+		nativeBuffer[this.position++] = '*';
+	}
+
+	/** Unsigned LEB128 varint, seven bits per byte, lowest group first */
+	private void writeVarint(int value) {
+		this.ensure(5);
+		byte[] nativeBuffer = this.buffer;
+		int seeker = this.position;
+		while ((value & ~0x7F) != 0) {
+			nativeBuffer[seeker++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		nativeBuffer[seeker++] = (byte)value;
+		this.position = seeker;
+	}
+
+	/**
+	 * Variable-length serialization algorithm for Strings.
+	 * <br />
+	 * Strings of the string table are written as references in the compact format.
+	 */
+	private void writeString(java.lang.String stringValue) {
+		java.lang.Integer reference;
+		if (this.table != null && (reference = this.table.get(stringValue)) != null) {
+			this.writeHeader('r', reference);
+			return;
+		}
+		this.ensure(1);
+		this.buffer[this.position++] = 's';
+		this.writeUtf8(stringValue);
+	}
+
+	/**
+	 * Length field followed by the UTF-8 bytes of a string.
+	 * <br />
+	 * The characters are encoded in place with the same rules as
+	 * <code>String.getBytes("UTF-8")</code>, a lone surrogate becomes '?'.
+	 */
+	private void writeUtf8(java.lang.String stringValue) {
+		int length = ScriptEncoder.utf8Length(stringValue);
+		this.writeLength(length);
+		if (!this.isSink() || length <= this.buffer.length) {
+			this.ensure(length);
+			this.writeChars(stringValue, 0, stringValue.length());
+			return;
+		}
+
+		/** Larger than the whole buffer, encoded in runs of at most a quarter buffer of chars */
+		int count = stringValue.length();
+		int run = (this.buffer.length >> 2) - 1;
+		for (int index = 0, limit; index < count; index = limit) {
+			limit = (int)java.lang.Math.min((long)index + run, count);
+			if (limit < count && java.lang.Character.isHighSurrogate(stringValue.charAt(limit - 1))) {
+				limit++;					//Keeps surrogate pairs together
+			}
+			this.ensure(4 * (limit - index));
+			this.writeChars(stringValue, index, limit);
+		}
+	}
+
+	/** UTF-8 bytes of the chars of a string in the given range, the room has been made */
+	private void writeChars(java.lang.String stringValue, int index, int count) {
+		byte[] nativeBuffer = this.buffer;
+		int seeker = this.position;
+
+		/** ASCII fast path */
+		for (char c; index < count && (c = stringValue.charAt(index)) < 0x80; index++) {
+			nativeBuffer[seeker++] = (byte)c;
+		}
+
+		while (index < count) {
+			char c = stringValue.charAt(index++);
+			if (c < 0x80) {
+				nativeBuffer[seeker++] = (byte)c;
+			} else if (c < 0x800) {
+				nativeBuffer[seeker++] = (byte)(0xC0 | (c >> 6));
+				nativeBuffer[seeker++] = (byte)(0x80 | (c & 0x3F));
+			} else if (java.lang.Character.isHighSurrogate(c) && index < count
+					&& java.lang.Character.isLowSurrogate(stringValue.charAt(index))) {
+				int codePoint = java.lang.Character.toCodePoint(c, stringValue.charAt(index++));
+				nativeBuffer[seeker++] = (byte)(0xF0 | (codePoint >> 18));
+				nativeBuffer[seeker++] = (byte)(0x80 | ((codePoint >> 12) & 0x3F));
+				nativeBuffer[seeker++] = (byte)(0x80 | ((codePoint >> 6) & 0x3F));
+				nativeBuffer[seeker++] = (byte)(0x80 | (codePoint & 0x3F));
+			} else if (java.lang.Character.isSurrogate(c)) {
+				nativeBuffer[seeker++] = '?';
+			} else {
+				nativeBuffer[seeker++] = (byte)(0xE0 | (c >> 12));
+				nativeBuffer[seeker++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+				nativeBuffer[seeker++] = (byte)(0x80 | (c & 0x3F));
+			}
+		}
+		this.position = seeker;
+	}
+
+	/** Makes room for at least the given number of bytes, flushing a fixed buffer */
+	private void ensure(int required) {
+		if (this.buffer.length - this.position >= required) {
+			return;
+		}
+		if (this.isSink()) {
+			this.drain();
+			return;
+		}
+		long capacity = java.lang.Math.max((long)this.buffer.length << 1, (long)this.position + required);
+		this.buffer = java.util.Arrays.copyOf(this.buffer, ScriptEncoder.checkSize(capacity));
+	}
+
+	/** Whether the buffer is flushed to a stream or channel */
+	private boolean isSink() {
+		return this.stream != null || this.channel != null;
+	}
+
+	/**
+	 * Flushes the buffer to the stream or channel.
+	 * <br />
+	 * Called deep inside the recursive encoding, so IOException travels
+	 * unchecked up to <code>flush()</code> or the caller of <code>encode(Script)</code>.
+	 */
+	private void drain() {
+		try {
+			if (this.stream != null) {
+				this.writeOut(this.stream);
+			} else if (this.channel != null) {
+				this.writeOut(this.channel);
+			}
+		} catch (java.io.IOException e) {
+			throw new java.io.UncheckedIOException(e);
+		}
+	}
+
+	/** Length of the UTF-8 form of a string, lone surrogates count as '?' */
+	static int utf8Length(java.lang.String stringValue) {
+		int count = stringValue.length();
+		long length = count;
+		for (int index = 0; index < count; index++) {
+			char c = stringValue.charAt(index);
+			if (c < 0x80) {
+				continue;
+			} else if (c < 0x800) {
+				length += 1;
+			} else if (java.lang.Character.isHighSurrogate(c) && index + 1 < count
+					&& java.lang.Character.isLowSurrogate(stringValue.charAt(index + 1))) {
+				length += 2;				//Four bytes for two chars
+				index++;
+			} else if (!java.lang.Character.isSurrogate(c)) {
+				length += 2;
+			}
+		}
+		return ScriptEncoder.checkSize(length);
+	}
+
+	/** Lexicographic order of byte arrays, bytes compared as unsigned */
+	private static int compareUnsigned(byte[] left, byte[] right) {
+		int length = java.lang.Math.min(left.length, right.length);
+		for (int index = 0; index < length; index++) {
+			int difference = (left[index] & 0xFF) - (right[index] & 0xFF);
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		return left.length - right.length;
+	}
+
+	/** Number of decimal digits of a non-negative int */
+	static int digits(int value) {
+		int digits = 1;
+		while (value >= 10) {
+			value /= 10;
+			digits++;
+		}
+		return digits;
+	}
+
+	/** Size estimate of the compact form, counting the String keys of all Objects on the way */
+	private static long census(Script script, java.util.Map<java.lang.String, java.lang.Integer> census) {
+		switch (script.type) {
+		case Undefined:
+		case Null:
+		case Boolean:
+			return 1;
+		case Number:
+			return 3;
+		case String:
+			return 2 + ((java.lang.String)script.script).length();
+		case Array: {
+			ScriptArray nativeArray = script.readArray();
+			long total = 3;
+			if (nativeArray.elements == null) {
+				return total + (nativeArray.numeric() ? 3L : 1L) * nativeArray.size();
+			}
+			for (Script element : nativeArray) {
+				total += ScriptEncoder.census(element, census);
+			}
+			return total;
+		}
+		case Object: {
+			long total = 3;
+			for (java.util.Map.Entry<Script, Script> nativeEntry : script.readObject().entrySet()) {
+				Script key = nativeEntry.getKey();
+				if (key.type == Script.Type.String) {
+					java.lang.Integer count = census.get(key.script);
+					census.put((java.lang.String)key.script, count == null ? 1 : count + 1);
+				}
+				total += ScriptEncoder.census(key, census);
+				total += ScriptEncoder.census(nativeEntry.getValue(), census);
+			}
+			return total;
+		}
+		default:
+			throw ScriptEncoder.unsupported(script);
+		}
+	}
+
+	/** Serialized sizes beyond the range of a Java array cannot be materialized */
+	private static int checkSize(long size) {
+		if (size > java.lang.Integer.MAX_VALUE - 8) {
+			throw new java.lang.RuntimeException(
+					"Serialized Script exceeds the maximum array size: " + size + " bytes"
+			);
+		}
+		return (int)size;
+	}
+
+	/** Serialization type checking */
+	private static java.lang.RuntimeException unsupported(Script script) {
+		return new java.lang.RuntimeException(
+				"Unsupported Serialization Type: " + script.typeof() +
+				"\tDetails: " + script.toString()
+		);
+	}
+}
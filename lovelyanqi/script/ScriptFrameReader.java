@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2018, 2020, LovelyAnQi. All rights reserved.
+ *
+ * GitHub: https://github.com/LovelyAnQi/Script-Framework/
+ * License: GPL 3.0
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package lovelyanqi.script;
+
+/**
+ * Class {@code ScriptFrameReader} reads the frames written by
+ * {@link ScriptFrameWriter} back as a sequence of Scripts.
+ * <br /><br />
+ * Unlike <code>Script::Load(java.io.InputStream)</code>, the end of the input is
+ * told apart from a cut message: input ending right on a frame boundary ends
+ * the iteration, input ending anywhere inside a frame is an error.
+ * <pre>
+ *     ScriptFrameReader reader = new ScriptFrameReader(socket.getInputStream());
+ *     while (reader.hasNext()) {
+ *         handle(reader.next());
+ *     }
+ * </pre>
+ * Frames are read exactly by their length, nothing past the last frame read
+ * is taken from the input. <i>Wrapping unbuffered streams in a
+ * java.io.BufferedInputStream is recommended</i>.
+ * <br /><br />
+ * <i>Truncated or malformed frames and checksum mismatches throw RuntimeException.</i>
+ *
+ * @author  LovelyAnQi
+ * @see     lovelyanqi.script.ScriptFrameWriter
+ * @since   3.0
+ */
+public final class ScriptFrameReader implements java.util.Iterator<Script>, java.io.Closeable {
+
+	/** Source of the frames */
+	private final java.io.InputStream stream;
+
+	/** Largest payload accepted, larger length fields are taken as malformed */
+	private final int limit;
+
+	/** Checksum of the payloads */
+	private final java.util.zip.CRC32 checksum = new java.util.zip.CRC32();
+
+	/** Frame buffer, grown as the payloads actually arrive */
+	private byte[] frame = new byte[ScriptEncoder.SINK_SIZE];
+
+	/** Frame read ahead by hasNext(), null if there is none */
+	private Script next;
+
+	/** Whether the input has ended on a frame boundary */
+	private boolean ended;
+
+	/** Number of bytes read so far, for error messages */
+	private long offset;
+
+	/**
+	 * <b>Reader Constructor</b><br />
+	 * Creates a reader over a stream.
+	 */
+	public ScriptFrameReader(java.io.InputStream stream) {
+		this(stream, java.lang.Integer.MAX_VALUE - 8);
+	}
+
+	/**
+	 * <b>Reader Constructor</b><br />
+	 * Creates a reader over a stream, refusing payloads longer than the given limit
+	 * before anything of them is read.
+	 */
+	public ScriptFrameReader(java.io.InputStream stream, int limit) {
+		if (stream == null) {
+			throw new java.lang.NullPointerException("No source to read frames from");
+		}
+		this.stream = stream;
+		this.limit = limit;
+	}
+
+	/**
+	 * <b>Reader Constructor</b><br />
+	 * Creates a reader over a channel.
+	 */
+	public ScriptFrameReader(java.nio.channels.ReadableByteChannel channel) {
+		this(java.nio.channels.Channels.newInputStream(channel));
+	}
+
+	/**
+	 * <b>Reader Constructor</b><br />
+	 * Creates a reader over a channel, refusing payloads longer than the given limit
+	 * before anything of them is read.
+	 */
+	public ScriptFrameReader(java.nio.channels.ReadableByteChannel channel, int limit) {
+		this(java.nio.channels.Channels.newInputStream(channel), limit);
+	}
+
+	/**
+	 * <i>ScriptFrameReader::hasNext()</i><br />
+	 * Returns whether another frame follows, reading it if needed. Blocks until
+	 * the frame has arrived entirely or the input has ended.
+	 */
+	@Override
+	public boolean hasNext() {
+		if (this.next == null && !this.ended) {
+			try {
+				this.next = this.readFrame();
+			} catch (java.io.IOException e) {
+				throw ScriptDecoder.failure(e);
+			}
+		}
+		return this.next != null;
+	}
+
+	/**
+	 * <i>ScriptFrameReader::next()</i><br />
+	 * Returns the Script of the next frame.
+	 */
+	@Override
+	public Script next() {
+		if (!this.hasNext()) {
+			throw new java.util.NoSuchElementException("No more frames");
+		}
+		Script script = this.next;
+		this.next = null;
+		return script;
+	}
+
+	/**
+	 * <i>ScriptFrameReader::stream()</i><br />
+	 * Returns the remaining frames as a sequential stream.
+	 */
+	public java.util.stream.Stream<Script> stream() {
+		return java.util.stream.StreamSupport.stream(
+				java.util.Spliterators.spliteratorUnknownSize(this,
+						java.util.Spliterator.ORDERED | java.util.Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * <i>ScriptFrameReader::close()</i><br />
+	 * Closes the source.
+	 */
+	@Override
+	public void close() throws java.io.IOException {
+		this.ended = true;
+		this.next = null;
+		this.stream.close();
+	}
+
+	/** Reads and decodes one frame, or returns null at the end of the input */
+	private Script readFrame() throws java.io.IOException {
+		long start = this.offset;
+		int first = this.stream.read();
+		if (first < 0) {
+			this.ended = true;
+			return null;
+		}
+		this.offset++;
+
+		this.fill(0, ScriptFrameWriter.HEADER_SIZE - 1, start, "a frame header");
+		byte[] nativeFrame = this.frame;
+		int length = first << 0x18 | (nativeFrame[0] & 0xFF) << 0x10 | (nativeFrame[1] & 0xFF) << 0x08 | (nativeFrame[2] & 0xFF);
+		int flags = nativeFrame[3] & 0xFF;
+		if (length < 0 || length > this.limit) {
+			throw ScriptFrameReader.malformed("Frame length out of range: " + (length & 0xFFFFFFFFL), start);
+		}
+		if ((flags & ~ScriptFrameWriter.FLAG_CHECKSUM) != 0) {
+			throw ScriptFrameReader.malformed("Unknown frame flags 0x" + java.lang.Integer.toHexString(flags), start);
+		}
+
+		/** Payload and checksum, the buffer only grows by what has been received */
+		int size = (flags & ScriptFrameWriter.FLAG_CHECKSUM) != 0 ? length + 4 : length;
+		this.fill(0, size, start, "a frame of " + length + " bytes");
+		nativeFrame = this.frame;
+		if ((flags & ScriptFrameWriter.FLAG_CHECKSUM) != 0) {
+			this.checksum.reset();
+			this.checksum.update(nativeFrame, 0, length);
+			int expected = java.nio.ByteBuffer.wrap(nativeFrame, length, 4).getInt();
+			if ((int)this.checksum.getValue() != expected) {
+				throw ScriptFrameReader.malformed("Frame checksum mismatch", start);
+			}
+		}
+
+		/** The payload must be exactly one Script element */
+		ScriptDecoder decoder = new ScriptDecoder(java.nio.ByteBuffer.wrap(nativeFrame, 0, length));
+		Script script = decoder.decode();
+		if (decoder.offset() != length) {
+			throw ScriptFrameReader.malformed(
+					(length - decoder.offset()) + " stray bytes after the Script element of a frame", start);
+		}
+		return script;
+	}
+
+	/** Reads exactly the given number of bytes into the frame buffer */
+	private void fill(int from, int count, long start, java.lang.String expected) throws java.io.IOException {
+		int end = from + count;
+		while (from < end) {
+			if (from == this.frame.length) {
+				int capacity = (int)java.lang.Math.min((long)end, (long)this.frame.length << 1);
+				this.frame = java.util.Arrays.copyOf(this.frame, capacity);
+			}
+			int read = this.stream.read(this.frame, from, java.lang.Math.min(end, this.frame.length) - from);
+			if (read < 0) {
+				throw ScriptFrameReader.malformed("Truncated input: expected " + expected, start);
+			}
+			from += read;
+			this.offset += read;
+		}
+	}
+
+	/** Frame is not in the frame format */
+	private static java.lang.RuntimeException malformed(java.lang.String reason, long offset) {
+		return new java.lang.RuntimeException(
+				"ScriptFormatException\n\t" +
+				reason + " in the frame at byte " + offset
+		);
+	}
+}
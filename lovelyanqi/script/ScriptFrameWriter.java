@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2018, 2020, LovelyAnQi. All rights reserved.
+ *
+ * GitHub: https://github.com/LovelyAnQi/Script-Framework/
+ * License: GPL 3.0
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package lovelyanqi.script;
+
+/**
+ * Class {@code ScriptFrameWriter} writes many Scripts back to back onto one
+ * stream or channel as self-delimiting frames, to be read back one by one with
+ * {@link ScriptFrameReader}.
+ * <br /><br />
+ * Frame format:<br />
+ * <i>[Length(4)][Flags(1)][Payload][CRC32(4)]</i><br />
+ * <i>Length is the big-endian byte length of the payload, which is one Script
+ * serialized as by <code>Script::passbytes(int format)</code>. The checksum of the
+ * payload follows it only when bit 0 of the flags is set. It is a CRC32, not a
+ * CRC32C, which only came with Java 9: the package stays within the Java 8 API.</i>
+ * <br /><br />
+ * Frames are collected in memory and sent in one write on <code>flush()</code>,
+ * or once the pending frames exceed 64 KB, so a producer can queue many small
+ * messages per system call:
+ * <pre>
+ *     ScriptFrameWriter writer = new ScriptFrameWriter(socket.getOutputStream());
+ *     for (Script message : messages) {
+ *         writer.write(message);
+ *     }
+ *     writer.flush();
+ * </pre>
+ *
+ * @author  LovelyAnQi
+ * @see     lovelyanqi.script.ScriptFrameReader
+ * @since   3.0
+ */
+public final class ScriptFrameWriter implements java.io.Closeable, java.io.Flushable {
+
+	/** Frame flag: a CRC32 of the payload follows it */
+	static final int FLAG_CHECKSUM = 0x01;
+
+	/** Bytes of the frame header, the length and the flags */
+	static final int HEADER_SIZE = 5;
+
+	/** Pending frames beyond this size are sent without waiting for flush() */
+	private static final int BATCH_SIZE = 0x10000;
+
+	/** Destination stream, or null when writing to a channel */
+	private final java.io.OutputStream stream;
+
+	/** Destination channel, or null when writing to a stream */
+	private final java.nio.channels.WritableByteChannel channel;
+
+	/** Serialization format of the payloads */
+	private final int format;
+
+	/** Checksum of the payloads, null when frames carry none */
+	private final java.util.zip.CRC32 checksum;
+
+	/** Pending frames */
+	private final ScriptEncoder encoder = new ScriptEncoder(ScriptEncoder.SINK_SIZE);
+
+	/**
+	 * <b>Writer Constructor</b><br />
+	 * Creates a writer of decimal format frames without checksums.
+	 */
+	public ScriptFrameWriter(java.io.OutputStream stream) {
+		this(stream, null, Script.FormatV1, false);
+	}
+
+	/**
+	 * <b>Writer Constructor</b><br />
+	 * Creates a writer of frames in the given format,
+	 * <code>Script.FormatV1</code> or <code>Script.FormatV2</code>.
+	 */
+	public ScriptFrameWriter(java.io.OutputStream stream, int format, boolean checksum) {
+		this(stream, null, format, checksum);
+	}
+
+	/**
+	 * <b>Writer Constructor</b><br />
+	 * Creates a writer of decimal format frames without checksums.
+	 */
+	public ScriptFrameWriter(java.nio.channels.WritableByteChannel channel) {
+		this(null, channel, Script.FormatV1, false);
+	}
+
+	/**
+	 * <b>Writer Constructor</b><br />
+	 * Creates a writer of frames in the given format,
+	 * <code>Script.FormatV1</code> or <code>Script.FormatV2</code>.
+	 */
+	public ScriptFrameWriter(java.nio.channels.WritableByteChannel channel, int format, boolean checksum) {
+		this(null, channel, format, checksum);
+	}
+
+	private ScriptFrameWriter(java.io.OutputStream stream, java.nio.channels.WritableByteChannel channel,
+			int format, boolean checksum) {
+		ScriptEncoder.checkFormat(format);
+		if (stream == null && channel == null) {
+			throw new java.lang.NullPointerException("No destination to write frames to");
+		}
+		this.stream = stream;
+		this.channel = channel;
+		this.format = format;
+		this.checksum = checksum ? new java.util.zip.CRC32() : null;
+	}
+
+	/**
+	 * <i>ScriptFrameWriter::write(Script)</i><br />
+	 * Appends one frame holding the given Script. The frame is sent with the
+	 * next flush, or right away when the pending frames exceed 64 KB.
+	 */
+	public void write(Script script) throws java.io.IOException {
+		ScriptEncoder nativeEncoder = this.encoder;
+		int start = nativeEncoder.reserve(4);
+		nativeEncoder.writeByte(this.checksum == null ? 0 : ScriptFrameWriter.FLAG_CHECKSUM);
+
+		/** A Script that cannot be serialized leaves no partial frame behind */
+		try {
+			if (this.format == Script.FormatV1) {
+				nativeEncoder.encode(script);
+			} else {
+				nativeEncoder.encodeCompact(script);
+			}
+		} catch (java.lang.RuntimeException e) {
+			nativeEncoder.rewind(start);
+			throw e;
+		}
+
+		int payload = start + ScriptFrameWriter.HEADER_SIZE;
+		nativeEncoder.putInt(start, nativeEncoder.position() - payload);
+		if (this.checksum != null) {
+			this.checksum.reset();
+			nativeEncoder.update(this.checksum, payload);
+			nativeEncoder.writeInt((int)this.checksum.getValue());
+		}
+
+		if (nativeEncoder.position() >= ScriptFrameWriter.BATCH_SIZE) {
+			this.send();
+		}
+	}
+
+	/**
+	 * <i>ScriptFrameWriter::writeAll(java.lang.Iterable)</i><br />
+	 * Appends one frame for each of the given Scripts, then flushes them together.
+	 */
+	public void writeAll(java.lang.Iterable<Script> scripts) throws java.io.IOException {
+		for (Script script : scripts) {
+			this.write(script);
+		}
+		this.flush();
+	}
+
+	/**
+	 * <i>ScriptFrameWriter::flush()</i><br />
+	 * Sends the pending frames in one write and flushes the destination stream.
+	 */
+	@Override
+	public void flush() throws java.io.IOException {
+		this.send();
+		if (this.stream != null) {
+			this.stream.flush();
+		}
+	}
+
+	/**
+	 * <i>ScriptFrameWriter::close()</i><br />
+	 * Sends the pending frames and closes the destination.
+	 */
+	@Override
+	public void close() throws java.io.IOException {
+		try {
+			this.flush();
+		} finally {
+			if (this.stream != null) {
+				this.stream.close();
+			} else {
+				this.channel.close();
+			}
+		}
+	}
+
+	/** Pending frames to the destination */
+	private void send() throws java.io.IOException {
+		if (this.stream != null) {
+			this.encoder.writeOut(this.stream);
+		} else {
+			this.encoder.writeOut(this.channel);
+		}
+	}
+}
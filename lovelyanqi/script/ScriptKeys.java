@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2018, 2020, LovelyAnQi. All rights reserved.
+ *
+ * GitHub: https://github.com/LovelyAnQi/Script-Framework/
+ * License: GPL 3.0
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package lovelyanqi.script;
+
+/**
+ * Class {@code ScriptKeys} is the opt-in pool of Object member names. While it is
+ * on, a String key added to any Object is replaced by the one Script of its name
+ * in the pool, so that Objects with the same members hold a single key Script and
+ * String for each name, and keys compare by identity first.
+ * <br /><br />
+ * Pooled keys are frozen before they are published, see <code>Script::freeze()</code>.
+ * The freeze is permanent, <code>unlock()</code> refuses it, so a key shared by many
+ * Objects never changes under any of them.
+ * <br /><br />
+ * The pool is shared by all threads and only grows: it is meant for a bounded set
+ * of member names, not for keys built from data.
+ *
+ * @author  LovelyAnQi
+ * @see     lovelyanqi.script.Script#InternKeys(boolean)
+ * @since   3.0
+ */
+final class ScriptKeys {
+
+	/** Pooled keys by name */
+	private static final java.util.concurrent.ConcurrentHashMap<java.lang.String, Script> POOL =
+			new java.util.concurrent.ConcurrentHashMap<java.lang.String, Script>();
+
+	/** Whether keys are pooled */
+	private static volatile boolean interning;
+
+	private ScriptKeys() {}
+
+	/**
+	 * <i>ScriptKeys::enable(boolean)</i><br />
+	 * Turns the pool on or off. Turning it off empties it, keys already in Objects
+	 * stay as they are.
+	 */
+	static void enable(boolean interning) {
+		ScriptKeys.interning = interning;
+		if (!interning) {
+			ScriptKeys.POOL.clear();
+		}
+	}
+
+	/**
+	 * <i>ScriptKeys::intern(Script)</i><br />
+	 * Returns the pooled key of a String key while the pool is on, the key itself
+	 * otherwise.
+	 */
+	static Script intern(Script key) {
+		if (!ScriptKeys.interning || key.type != Script.Type.String) {
+			return key;
+		}
+		java.lang.String name = (java.lang.String)key.script;
+		Script pooled = ScriptKeys.POOL.get(name);
+		if (pooled == null) {
+			key.freeze();						//Frozen before another thread can see it
+			pooled = ScriptKeys.POOL.putIfAbsent(name, key);
+			if (pooled == null) {
+				pooled = key;
+			}
+		}
+		return pooled;
+	}
+}
@@ -0,0 +1,627 @@
+/*
+ * Copyright (c) 2018, 2020, LovelyAnQi. All rights reserved.
+ *
+ * GitHub: https://github.com/LovelyAnQi/Script-Framework/
+ * License: GPL 3.0
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package lovelyanqi.script;
+
+/**
+ * Class {@code ScriptObject} is the storage of a Script Object: an open-addressing
+ * hash table of keys to values that keeps its members in insertion order, and also
+ * records whether references to its members have been handed out, as
+ * <code>Object::mem()</code> and iteration do.
+ * <br /><br />
+ * Members live in three parallel arrays, <i>keys</i>, <i>values</i> and the cached
+ * <i>hashes</i> of the keys, in the order they were added. Iterating, printing and
+ * serializing walk these arrays, so the output of an Object is stable. Replacing
+ * the value of a key keeps its position. A removed member leaves a hole, which is
+ * closed when the arrays next run out of room.
+ * <br /><br />
+ * Objects of up to eight members are looked up by scanning the cached hashes. Larger
+ * ones keep an index: a power-of-two table of member positions with linear probing,
+ * at most half full, where the hole of a removed member acts as a tombstone.
+ * Keys are only hashed when added, never again when the table grows.
+ * <br /><br />
+ * String and Number keys can be looked up by their raw value, see {@link #find(String)}
+ * and {@link #find(int)}, without making a Script of the key.
+ * <br /><br />
+ * Every key is frozen when it is added, see <code>Script::freeze()</code>: a key can
+ * no longer change, so the hash cached for it stays valid. The hash code of the
+ * Object itself is cached as well, and every write clears it. It is only trusted
+ * while no member has been handed out, or once the Object is itself frozen.
+ * <br /><br />
+ * While the key pool is on, see {@link ScriptKeys}, String keys are replaced by
+ * their pooled Script when they are added, and lookups compare keys by identity
+ * before equality.
+ * <br /><br />
+ * An Object whose members were never handed out can share its storage with a
+ * copy-on-write clone, see <code>Script::LazyClone()</code>: nobody outside the
+ * storage can write to a member behind its back.
+ *
+ * @author  LovelyAnQi
+ * @see     lovelyanqi.script.Script#LazyClone()
+ * @since   3.0
+ */
+final class ScriptObject extends java.util.AbstractMap<Script, Script> {
+
+	/** Largest Object looked up without an index */
+	private static final int SMALL = 8;
+
+	/** Shared member arrays of empty Objects, replaced on the first insertion */
+	private static final Script[] EMPTY = {};
+
+	/** Shared hash array of empty Objects */
+	private static final int[] NO_HASHES = {};
+
+	/** Keys in insertion order, null at the position of a removed member */
+	private Script[] keys;
+
+	/** Values, at the positions of their keys */
+	private Script[] values;
+
+	/** Cached hash codes of the keys */
+	private int[] hashes;
+
+	/** Positions plus one of the members by hash, 0 for a free slot, null while the Object is small */
+	private int[] index;
+
+	/** Number of positions used, removed members included */
+	private int end;
+
+	/** Number of members */
+	private int size;
+
+	/** Structural changes, for fail-fast iteration */
+	private int modCount;
+
+	/** Whether the storage belongs to an Object key, which can no longer change */
+	private boolean frozen;
+
+	/** Cached hash code, 0 while unknown, only trusted while no write can bypass the storage */
+	private int hash;
+
+	/** Whether references to keys or values have been handed out */
+	private boolean exposed;
+
+	/** Unassigned slots handed out by <code>Script::mem()</code> for missing keys, null while there is none */
+	private java.util.HashMap<Script, Script> pending;
+
+	/**
+	 * <b>Storage Constructor</b><br />
+	 * Creates an empty Object.
+	 */
+	ScriptObject() {
+		this.keys = ScriptObject.EMPTY;
+		this.values = ScriptObject.EMPTY;
+		this.hashes = ScriptObject.NO_HASHES;
+	}
+
+	/**
+	 * <b>Storage Constructor</b><br />
+	 * Creates an empty Object with room for the given number of members.
+	 */
+	ScriptObject(int capacity) {
+		this();
+		if (capacity > 0) {
+			this.resize(capacity);
+		}
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public boolean containsKey(java.lang.Object key) {
+		return key instanceof Script && this.position((Script)key) >= 0;
+	}
+
+	@Override
+	public Script get(java.lang.Object key) {
+		if (!(key instanceof Script)) {
+			return null;
+		}
+		int position = this.position((Script)key);
+		return position < 0 ? null : this.values[position];
+	}
+
+	/**
+	 * <i>ScriptObject::find(String)</i><br />
+	 * Returns the value of a String key, or null if it is missing, without making
+	 * a Script of the key.
+	 */
+	Script find(java.lang.String key) {
+		int hash = key.hashCode();
+		if (this.index == null) {
+			for (int position = 0; position < this.end; position++) {
+				if (this.hashes[position] == hash && ScriptObject.matches(this.keys[position], key)) {
+					return this.values[position];
+				}
+			}
+			return null;
+		}
+		int mask = this.index.length - 1;
+		for (int slot = ScriptObject.spread(hash) & mask; this.index[slot] != 0; slot = (slot + 1) & mask) {
+			int position = this.index[slot] - 1;
+			if (this.hashes[position] == hash && ScriptObject.matches(this.keys[position], key)) {
+				return this.values[position];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * <i>ScriptObject::find(int)</i><br />
+	 * Returns the value of a Number key, or null if it is missing, without making
+	 * a Script of the key.
+	 */
+	Script find(int key) {
+		int hash = java.lang.Integer.hashCode(key);
+		if (this.index == null) {
+			for (int position = 0; position < this.end; position++) {
+				if (this.hashes[position] == hash && ScriptObject.matches(this.keys[position], key)) {
+					return this.values[position];
+				}
+			}
+			return null;
+		}
+		int mask = this.index.length - 1;
+		for (int slot = ScriptObject.spread(hash) & mask; this.index[slot] != 0; slot = (slot + 1) & mask) {
+			int position = this.index[slot] - 1;
+			if (this.hashes[position] == hash && ScriptObject.matches(this.keys[position], key)) {
+				return this.values[position];
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Script put(Script key, Script value) {
+		this.checkFrozen();
+		this.hash = 0;
+		int hash = key.hashCode();
+		int position = this.position(key, hash);
+		if (position >= 0) {
+			Script previous = this.values[position];
+			this.values[position] = value;
+			return previous;
+		}
+
+		if (this.end == this.keys.length) {
+			this.resize(this.size >= this.end >> 1 ? java.lang.Math.max(4, this.end << 1) : this.keys.length);
+		}
+		if (this.pending != null) {
+			this.release(key);
+		}
+		key = ScriptKeys.intern(key);
+		key.freeze();
+		position = this.end++;
+		this.keys[position] = key;
+		this.values[position] = value;
+		this.hashes[position] = hash;
+		if (this.index != null) {
+			this.link(position);
+		}
+		this.size++;
+		this.modCount++;
+		return null;
+	}
+
+	@Override
+	public Script remove(java.lang.Object key) {
+		if (!(key instanceof Script)) {
+			return null;
+		}
+		int position = this.position((Script)key);
+		if (position < 0) {
+			return null;
+		}
+		Script previous = this.values[position];
+		this.removeAt(position);
+		return previous;
+	}
+
+	@Override
+	public void clear() {
+		this.checkFrozen();
+		this.hash = 0;
+		java.util.Arrays.fill(this.keys, 0, this.end, null);
+		java.util.Arrays.fill(this.values, 0, this.end, null);
+		if (this.index != null) {
+			java.util.Arrays.fill(this.index, 0);
+		}
+		this.end = 0;
+		this.size = 0;
+		this.modCount++;
+	}
+
+	@Override
+	public java.util.Set<java.util.Map.Entry<Script, Script>> entrySet() {
+		return new java.util.AbstractSet<java.util.Map.Entry<Script, Script>>() {
+
+			@Override
+			public int size() {
+				return ScriptObject.this.size;
+			}
+
+			@Override
+			public java.util.Iterator<java.util.Map.Entry<Script, Script>> iterator() {
+				return new Walker<java.util.Map.Entry<Script, Script>>() {
+
+					@Override
+					java.util.Map.Entry<Script, Script> at(int position) {
+						return new Member(position);
+					}
+				};
+			}
+		};
+	}
+
+	@Override
+	public java.util.Set<Script> keySet() {
+		return new java.util.AbstractSet<Script>() {
+
+			@Override
+			public int size() {
+				return ScriptObject.this.size;
+			}
+
+			@Override
+			public boolean contains(java.lang.Object key) {
+				return ScriptObject.this.containsKey(key);
+			}
+
+			@Override
+			public java.util.Iterator<Script> iterator() {
+				return new Walker<Script>() {
+
+					@Override
+					Script at(int position) {
+						return ScriptObject.this.keys[position];
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Sums the hash codes of the members, skipping those of value Undefined as
+	 * <code>Script::equals()</code> does. Keys are not hashed again.
+	 */
+	@Override
+	public int hashCode() {
+		boolean trusted = this.frozen || !this.exposed;
+		if (trusted && this.hash != 0) {
+			return this.hash;
+		}
+		int hash = 0;
+		for (int position = 0; position < this.end; position++) {
+			if (this.keys[position] != null && this.values[position].type != Script.Type.Undefined) {
+				hash += this.hashes[position] ^ this.values[position].hashCode();
+			}
+		}
+		if (trusted) {
+			this.hash = hash;
+		}
+		return hash;
+	}
+
+	@Override
+	public void forEach(java.util.function.BiConsumer<? super Script, ? super Script> action) {
+		int expected = this.modCount;
+		for (int position = 0; position < this.end; position++) {
+			if (this.keys[position] != null) {
+				action.accept(this.keys[position], this.values[position]);
+			}
+			if (this.modCount != expected) {
+				throw new java.util.ConcurrentModificationException();
+			}
+		}
+	}
+
+	/**
+	 * <i>ScriptObject::expose()</i><br />
+	 * Records that references to the members are handed out of the storage.
+	 */
+	void expose() {
+		this.exposed = true;
+	}
+
+	/**
+	 * <i>ScriptObject::isExposed()</i><br />
+	 * Returns whether references to the members may be held outside the storage.
+	 */
+	boolean isExposed() {
+		return this.exposed;
+	}
+
+	/**
+	 * <i>ScriptObject::pending(Script)</i><br />
+	 * Returns the unassigned slot handed out for a missing key, or null if there is none.
+	 */
+	Script pending(Script key) {
+		return this.pending == null ? null : this.pending.get(key);
+	}
+
+	/**
+	 * <i>ScriptObject::hold(Script, Script)</i><br />
+	 * Records the slot handed out for a missing key, returned again for the key until
+	 * the key is added. The slot writes to the storage from outside, as an exposed
+	 * member would, so the storage is exposed: it stays with this Object.
+	 */
+	void hold(Script key, Script slot) {
+		if (this.pending == null) {
+			this.pending = new java.util.HashMap<Script, Script>(4);
+		}
+		this.pending.put(key, slot);
+		this.exposed = true;
+	}
+
+	/** Forgets the slot of a key being added */
+	private void release(Script key) {
+		if (this.pending.remove(key) != null && this.pending.isEmpty()) {
+			this.pending = null;
+		}
+	}
+
+	/**
+	 * <i>ScriptObject::freeze()</i><br />
+	 * Freezes the storage and locks its values, deeply: the Object is an Object key,
+	 * whose hash code must stay valid. Its keys already are. Any later write throws.
+	 */
+	void freeze() {
+		if (this.frozen) {
+			return;
+		}
+		this.frozen = true;
+		for (int position = 0; position < this.end; position++) {
+			if (this.keys[position] != null) {
+				this.values[position].freeze();
+			}
+		}
+	}
+
+	/** Returns the position of a key, or -1 if it is missing */
+	private int position(Script key) {
+		return this.position(key, key.hashCode());
+	}
+
+	/** Returns the position of a key of the given hash, or -1 if it is missing */
+	private int position(Script key, int hash) {
+		if (this.index == null) {
+			for (int position = 0; position < this.end; position++) {
+				if (this.hashes[position] == hash && this.keys[position] != null && (key == this.keys[position] || key.equals(this.keys[position]))) {
+					return position;
+				}
+			}
+			return -1;
+		}
+		int mask = this.index.length - 1;
+		for (int slot = ScriptObject.spread(hash) & mask; this.index[slot] != 0; slot = (slot + 1) & mask) {
+			int position = this.index[slot] - 1;
+			if (this.hashes[position] == hash && this.keys[position] != null && (key == this.keys[position] || key.equals(this.keys[position]))) {
+				return position;
+			}
+		}
+		return -1;
+	}
+
+	/** Removes the member at a position, leaving a hole */
+	private void removeAt(int position) {
+		this.checkFrozen();
+		this.hash = 0;
+		this.keys[position] = null;
+		this.values[position] = null;
+		this.size--;
+		this.modCount++;
+		if (this.size == 0) {
+			this.clear();				//Nothing left to keep in order, start over at position 0
+		}
+	}
+
+	/** Moves the members, holes closed, to arrays of the given capacity, and rebuilds the index */
+	private void resize(int capacity) {
+		Script[] keys = new Script[capacity];
+		Script[] values = new Script[capacity];
+		int[] hashes = new int[capacity];
+		int size = 0;
+		for (int position = 0; position < this.end; position++) {
+			if (this.keys[position] != null) {
+				keys[size] = this.keys[position];
+				values[size] = this.values[position];
+				hashes[size] = this.hashes[position];
+				size++;
+			}
+		}
+		this.keys = keys;
+		this.values = values;
+		this.hashes = hashes;
+		this.end = size;
+
+		/** At least twice as many slots as positions: the index stays at most half full */
+		this.index = capacity > ScriptObject.SMALL ? new int[java.lang.Integer.highestOneBit(capacity * 4 - 1)] : null;
+		for (int position = 0; this.index != null && position < size; position++) {
+			this.link(position);
+		}
+	}
+
+	/** Enters a position into the index */
+	private void link(int position) {
+		int mask = this.index.length - 1;
+		int slot = ScriptObject.spread(this.hashes[position]) & mask;
+		while (this.index[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		this.index[slot] = position + 1;
+	}
+
+	/** Writes to the storage of an Object key are refused */
+	private void checkFrozen() {
+		if (this.frozen) {
+			throw new java.lang.RuntimeException(
+					"IllegalFunctionInvocationException\n\tAn Object used as an Object key cannot be changed"
+			);
+		}
+	}
+
+	/** Mixes the high bits of a hash into the low ones, which pick the slot */
+	private static int spread(int hash) {
+		return hash ^ hash >>> 16;
+	}
+
+	/** Whether a stored key is the String key */
+	private static boolean matches(Script stored, java.lang.String key) {
+		return stored != null && stored.type == Script.Type.String && key.equals(stored.script);
+	}
+
+	/** Whether a stored key is the Number key */
+	private static boolean matches(Script stored, int key) {
+		return stored != null && stored.type == Script.Type.Number && ((java.lang.Integer)stored.script).intValue() == key;
+	}
+
+	/**
+	 * Class {@code ScriptObject.Walker} walks the members in insertion order, skipping
+	 * holes. It supports remove() and fails fast on any other structural change.
+	 */
+	private abstract class Walker<E> implements java.util.Iterator<E> {
+
+		/** Position of the next member to return */
+		private int next;
+
+		/** Position of the member last returned, -1 if there is none */
+		private int last = -1;
+
+		/** Structural changes the walk knows of */
+		private int expected = ScriptObject.this.modCount;
+
+		/** Returns what the walk yields for the member at a position */
+		abstract E at(int position);
+
+		@Override
+		public boolean hasNext() {
+			while (this.next < ScriptObject.this.end && ScriptObject.this.keys[this.next] == null) {
+				this.next++;
+			}
+			return this.next < ScriptObject.this.end;
+		}
+
+		@Override
+		public E next() {
+			if (ScriptObject.this.modCount != this.expected) {
+				throw new java.util.ConcurrentModificationException();
+			}
+			if (!this.hasNext()) {
+				throw new java.util.NoSuchElementException();
+			}
+			this.last = this.next++;
+			return this.at(this.last);
+		}
+
+		@Override
+		public void remove() {
+			if (this.last < 0) {
+				throw new java.lang.IllegalStateException();
+			}
+			if (ScriptObject.this.modCount != this.expected) {
+				throw new java.util.ConcurrentModificationException();
+			}
+			boolean emptied = ScriptObject.this.size == 1;
+			ScriptObject.this.removeAt(this.last);
+			if (emptied) {
+				this.next = 0;			//The storage started over
+			}
+			this.last = -1;
+			this.expected = ScriptObject.this.modCount;
+		}
+	}
+
+	/**
+	 * Class {@code ScriptObject.Member} is an entry of the Object, which reads and
+	 * writes through to the storage. It finds its key again if the members moved.
+	 */
+	private final class Member implements java.util.Map.Entry<Script, Script> {
+
+		/** Key of the entry */
+		private final Script key;
+
+		/** Position of the key when the entry was made */
+		private int position;
+
+		Member(int position) {
+			this.key = ScriptObject.this.keys[position];
+			this.position = position;
+		}
+
+		/** Returns the current position of the key, or -1 once it was removed */
+		private int locate() {
+			if (this.position >= ScriptObject.this.end || ScriptObject.this.keys[this.position] != this.key) {
+				this.position = ScriptObject.this.position(this.key);
+			}
+			return this.position;
+		}
+
+		@Override
+		public Script getKey() {
+			return this.key;
+		}
+
+		@Override
+		public Script getValue() {
+			int position = this.locate();
+			return position < 0 ? null : ScriptObject.this.values[position];
+		}
+
+		@Override
+		public Script setValue(Script value) {
+			int position = this.locate();
+			if (position < 0) {
+				throw new java.lang.IllegalStateException("Entry " + this.key + " is no longer in the Object");
+			}
+			ScriptObject.this.checkFrozen();
+			ScriptObject.this.hash = 0;
+			Script previous = ScriptObject.this.values[position];
+			ScriptObject.this.values[position] = value;
+			return previous;
+		}
+
+		@Override
+		public boolean equals(java.lang.Object obj) {
+			if (!(obj instanceof java.util.Map.Entry)) {
+				return false;
+			}
+			java.util.Map.Entry<?, ?> entry = (java.util.Map.Entry<?, ?>)obj;
+			return java.util.Objects.equals(this.key, entry.getKey()) && java.util.Objects.equals(this.getValue(), entry.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return java.util.Objects.hashCode(this.key) ^ java.util.Objects.hashCode(this.getValue());
+		}
+
+		@Override
+		public java.lang.String toString() {
+			return this.key + "=" + this.getValue();
+		}
+	}
+}
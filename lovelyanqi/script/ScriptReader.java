@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2018, 2020, LovelyAnQi. All rights reserved.
+ *
+ * GitHub: https://github.com/LovelyAnQi/Script-Framework/
+ * License: GPL 3.0
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package lovelyanqi.script;
+
+/**
+ * Class {@code ScriptReader} is a streaming pull reader over serialized
+ * Script data, in either format written by <code>Script::passbytes()</code>.
+ * It reports the structure of the <i>first Script element</i> of its input
+ * as a sequence of events and never creates a Script instance.
+ * <br /><br />
+ * Scanning a serialized Script this way costs no allocation beyond the
+ * Strings actually asked for:
+ * <pre>
+ *     ScriptReader reader = new ScriptReader(bytes);
+ *     while (reader.hasNext()) {
+ *         switch (reader.next()) {
+ *         case StartArray:
+ *             count += reader.length();
+ *             break;
+ *         case StartObject:
+ *             reader.skipChildren();       //Not interested, skipped by length
+ *             break;
+ *         default:
+ *             break;
+ *         }
+ *     }
+ * </pre>
+ * Object members are reported as a key event followed by the events of the
+ * value. String keys produce {@link Event#Key}, keys of the other serializable
+ * types produce their usual events, with {@link #isKey()} returning true.
+ * <br /><br />
+ * <i>Truncated or malformed input throws RuntimeException, like Script::Load().</i>
+ *
+ * @author  LovelyAnQi
+ * @see     lovelyanqi.script.Script#Load(byte[])
+ * @since   3.0
+ */
+public final class ScriptReader {
+
+	/** <b>Event filter</b><br /> */
+	public enum Event {
+		Undefined, Null, Boolean, Number, String, Key, StartArray, StartObject, EndArray, EndObject
+	}
+
+	/** Source of the serialized bytes */
+	private final ScriptDecoder decoder;
+
+	/** Elements still to be read in each open container, Objects count keys and values */
+	private long[] remaining = new long[0x10];
+
+	/** Whether each open container is an Object */
+	private boolean[] objects = new boolean[0x10];
+
+	/** Number of open containers */
+	private int depth;
+
+	/** Whether the header has been read */
+	private boolean started;
+
+	/** Whether the whole first element has been reported */
+	private boolean finished;
+
+	/** Last reported event */
+	private Event event;
+
+	/** Whether the last reported element is an Object key */
+	private boolean key;
+
+	/** Member count of the last StartArray/StartObject, or the byte length of a pending String */
+	private int length;
+
+	/** Value of the last Number or Boolean */
+	private int value;
+
+	/** Value of the last String or Key once read */
+	private java.lang.String string;
+
+	/** Whether the body of the last String or Key is still unread */
+	private boolean pending;
+
+	/**
+	 * <b>Reader Constructor</b><br />
+	 * Creates a reader over a byte array, which is not copied.
+	 */
+	public ScriptReader(byte[] bytes) {
+		this(java.nio.ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * <b>Reader Constructor</b><br />
+	 * Creates a reader over the bytes from the position to the limit of a buffer.
+	 * The buffer itself is not modified.
+	 */
+	public ScriptReader(java.nio.ByteBuffer bytes) {
+		this.decoder = new ScriptDecoder(bytes);
+	}
+
+	/**
+	 * <b>Reader Constructor</b><br />
+	 * Creates a reader over a stream. Once the first element has been read entirely,
+	 * the bytes following it stay readable on the stream, as with Script::Load().
+	 */
+	public ScriptReader(java.io.InputStream bytes) {
+		this.decoder = new ScriptDecoder(bytes);
+	}
+
+	/**
+	 * <i>ScriptReader::hasNext()</i><br />
+	 * Returns whether more events of the first element are to come.
+	 */
+	public boolean hasNext() {
+		return !this.finished;
+	}
+
+	/**
+	 * <i>ScriptReader::next()</i><br />
+	 * Advances to the next event and returns it.
+	 */
+	public Event next() {
+		if (this.finished) {
+			throw new java.util.NoSuchElementException("The Script element has been read entirely");
+		}
+		try {
+			this.skipPendingString();
+			if (!this.started) {
+				this.decoder.readHeader();
+				this.started = true;
+			}
+
+			/** Close the innermost container once its members are read */
+			if (this.depth > 0 && this.remaining[this.depth - 1] == 0) {
+				this.key = false;
+				this.event = this.objects[--this.depth] ? Event.EndObject : Event.EndArray;
+				this.finished = this.depth == 0;
+				this.finish();
+				return this.event;
+			}
+
+			this.key = this.depth > 0 && this.objects[this.depth - 1] && (this.remaining[this.depth - 1] & 1) == 0;
+			if (this.depth > 0) {
+				this.remaining[this.depth - 1]--;
+			}
+			this.event = this.readEvent();
+
+			/** A scalar at the top level is the whole element */
+			this.finished = this.depth == 0;
+			this.finish();
+			return this.event;
+		} catch (java.io.IOException e) {
+			throw ScriptDecoder.failure(e);
+		}
+	}
+
+	/**
+	 * <i>ScriptReader::skipChildren()</i><br />
+	 * Skips the unread members of the innermost open Array or Object, typically right
+	 * after its StartArray/StartObject event. The members are passed over by their
+	 * serialized lengths, nothing is decoded. The next event is the matching end event.
+	 */
+	public void skipChildren() {
+		if (this.depth == 0) {
+			throw new java.lang.IllegalStateException("No Array or Object is open");
+		}
+		try {
+			this.skipPendingString();
+			long count = this.remaining[this.depth - 1];
+			while (count-- > 0) {
+				this.decoder.skipNext();
+			}
+			this.remaining[this.depth - 1] = 0;
+		} catch (java.io.IOException e) {
+			throw ScriptDecoder.failure(e);
+		}
+	}
+
+	/**
+	 * <i>ScriptReader::event()</i><br />
+	 * Returns the last reported event, or null before the first call to next().
+	 */
+	public Event event() {
+		return this.event;
+	}
+
+	/**
+	 * <i>ScriptReader::isKey()</i><br />
+	 * Returns whether the last reported element is an Object key. For composite keys
+	 * this holds for their StartArray/StartObject event.
+	 */
+	public boolean isKey() {
+		return this.key;
+	}
+
+	/**
+	 * <i>ScriptReader::depth()</i><br />
+	 * Returns the number of open Arrays and Objects.
+	 */
+	public int depth() {
+		return this.depth;
+	}
+
+	/**
+	 * <i>ScriptReader::length()</i><br />
+	 * Returns the number of members announced by the last StartArray/StartObject event.
+	 */
+	public int length() {
+		this.checkEvent("length()", Event.StartArray, Event.StartObject);
+		return this.length;
+	}
+
+	/**
+	 * <i>ScriptReader::stringValue()</i><br />
+	 * Returns the value of the last String or Key event. The body is only decoded
+	 * when this method is called.
+	 * <br />
+	 * <i>Once skipChildren() has passed over an unread body, the value is gone and
+	 * this method throws</i>.
+	 */
+	public java.lang.String stringValue() {
+		this.checkEvent("stringValue()", Event.String, Event.Key);
+		if (this.pending) {
+			try {
+				this.string = this.decoder.readString(this.length);
+			} catch (java.io.IOException e) {
+				throw ScriptDecoder.failure(e);
+			}
+			this.pending = false;
+		}
+		if (this.string == null) {
+			throw new java.lang.IllegalStateException(
+					"stringValue() cannot be invoked once the String body has been skipped"
+			);
+		}
+		return this.string;
+	}
+
+	/**
+	 * <i>ScriptReader::intValue()</i><br />
+	 * Returns the value of the last Number event.
+	 */
+	public int intValue() {
+		this.checkEvent("intValue()", Event.Number);
+		return this.value;
+	}
+
+	/**
+	 * <i>ScriptReader::booleanValue()</i><br />
+	 * Returns the value of the last Boolean event.
+	 */
+	public boolean booleanValue() {
+		this.checkEvent("booleanValue()", Event.Boolean);
+		return this.value != 0;
+	}
+
+	/** Reads one tag with what follows it up to its members or body */
+	private Event readEvent() throws java.io.IOException {
+		int tag = this.decoder.readTag();
+		switch (tag) {
+		case 'u':
+			return Event.Undefined;
+		case 'n':
+			return Event.Null;
+		case 't':
+		case 'f':
+			this.value = tag == 't' ? 1 : 0;
+			return Event.Boolean;
+		case 'i':
+			this.value = this.decoder.readNumber();
+			return Event.Number;
+		case 's':
+			/** Nested bodies stay unread until asked for */
+			this.length = this.decoder.readLength();
+			if (this.depth == 0) {
+				this.string = this.decoder.readString(this.length);
+			} else {
+				this.string = null;
+				this.pending = true;
+			}
+			return this.key ? Event.Key : Event.String;
+		case 'r':
+			this.string = this.decoder.readReference();
+			return this.key ? Event.Key : Event.String;
+		case 'a':
+		case 'o':
+			this.length = this.decoder.readLength();
+			this.push(tag == 'o' ? 2L * this.length : this.length, tag == 'o');
+			return tag == 'o' ? Event.StartObject : Event.StartArray;
+		default:
+			throw this.decoder.malformed("Unknown type tag 0x" + java.lang.Integer.toHexString(tag & 0xFF),
+					this.decoder.offset() - 1);
+		}
+	}
+
+	/** Opens a container */
+	private void push(long count, boolean object) {
+		if (this.depth == this.remaining.length) {
+			this.remaining = java.util.Arrays.copyOf(this.remaining, this.depth << 1);
+			this.objects = java.util.Arrays.copyOf(this.objects, this.depth << 1);
+		}
+		this.remaining[this.depth] = count;
+		this.objects[this.depth++] = object;
+	}
+
+	/** Passes over the body of a String that was not asked for */
+	private void skipPendingString() throws java.io.IOException {
+		if (this.pending) {
+			this.decoder.skipBytes(this.length, "a String of " + this.length + " bytes");
+			this.pending = false;
+		}
+	}
+
+	/** Hands the read-ahead bytes back to a stream once everything has been consumed */
+	private void finish() {
+		if (this.finished) {
+			this.decoder.release();
+		}
+	}
+
+	/** Checks that an accessor matches the last event */
+	private void checkEvent(java.lang.String caller, Event... test) {
+		for (int it = 0; it < test.length; ++it) {
+			if (this.event == test[it]) return;
+		}
+		throw new java.lang.IllegalStateException(
+				caller + " cannot be invoked on event " + this.event
+		);
+	}
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2018, 2020, LovelyAnQi. All rights reserved.
+ *
+ * GitHub: https://github.com/LovelyAnQi/Script-Framework/
+ * License: GPL 3.0
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ *
+ */
+
+package lovelyanqi.script;
+
+/**
+ * Class {@code ScriptTasks} runs the higher-order Array operations of Script,
+ * <code>map()</code>, <code>filter()</code>, <code>reduce()</code> and the
+ * others, over a range of positions of an Array storage, either on the calling
+ * thread or cut into chunks on a ForkJoinPool. Elements are read through
+ * <code>ScriptArray::valueAt(int)</code>, so a direct storage is read in place.
+ * <br /><br />
+ * The chunk size follows the length of the range and the parallelism of the pool,
+ * about four chunks per worker, and short ranges are never split. Results are
+ * written at the positions of their elements, so they come out in order whatever
+ * the order the chunks ran in.
+ *
+ * @author  LovelyAnQi
+ * @see     lovelyanqi.script.Script#parallelMap(Functional)
+ * @since   3.0
+ */
+final class ScriptTasks {
+
+	/** Shortest range worth splitting */
+	private static final int PARALLEL_THRESHOLD = 0x800;
+
+	/** Smallest chunk, below which forking costs more than it saves */
+	private static final int PARALLEL_CHUNK = 0x100;
+
+	/** Kinds of element-wise passes */
+	private static final int MAP = 0;
+	private static final int TEST = 1;
+	private static final int EACH = 2;
+
+	private ScriptTasks() {}
+
+	/**
+	 * <i>ScriptTasks::chunk(int, java.util.concurrent.ForkJoinPool)</i><br />
+	 * Returns the chunk size for a range on a pool, 0 when the range is to be run
+	 * on the calling thread.
+	 */
+	static int chunk(int length, java.util.concurrent.ForkJoinPool pool) {
+		if (pool == null || length < ScriptTasks.PARALLEL_THRESHOLD || pool.getParallelism() < 2) {
+			return 0;
+		}
+		return java.lang.Math.max(ScriptTasks.PARALLEL_CHUNK, length / (pool.getParallelism() << 2) + 1);
+	}
+
+	/**
+	 * <i>ScriptTasks::map(ScriptArray, int, int, Functional, java.util.concurrent.ForkJoinPool)</i><br />
+	 * Returns copies of the results of the function on each element of the range.
+	 */
+	static Script[] map(ScriptArray storage, int from, int to, Functional functional,
+			java.util.concurrent.ForkJoinPool pool) {
+		Script[] results = new Script[to - from];
+		ScriptTasks.apply(new Pass(ScriptTasks.MAP, storage, from, to, functional, results, null,
+				ScriptTasks.chunk(to - from, pool)), pool);
+		return results;
+	}
+
+	/**
+	 * <i>ScriptTasks::test(ScriptArray, int, int, Functional, java.util.concurrent.ForkJoinPool)</i><br />
+	 * Returns whether the function holds for each element of the range.
+	 */
+	static boolean[] test(ScriptArray storage, int from, int to, Functional functional,
+			java.util.concurrent.ForkJoinPool pool) {
+		boolean[] results = new boolean[to - from];
+		ScriptTasks.apply(new Pass(ScriptTasks.TEST, storage, from, to, functional, null, results,
+				ScriptTasks.chunk(to - from, pool)), pool);
+		return results;
+	}
+
+	/**
+	 * <i>ScriptTasks::each(ScriptArray, int, int, Functional, java.util.concurrent.ForkJoinPool)</i><br />
+	 * Runs the function on each element of the range.
+	 */
+	static void each(ScriptArray storage, int from, int to, Functional functional,
+			java.util.concurrent.ForkJoinPool pool) {
+		ScriptTasks.apply(new Pass(ScriptTasks.EACH, storage, from, to, functional, null, null,
+				ScriptTasks.chunk(to - from, pool)), pool);
+	}
+
+	/**
+	 * <i>ScriptTasks::fold(ScriptArray, int, int, Functional, java.util.concurrent.ForkJoinPool)</i><br />
+	 * Folds a non-empty range from its first element. In parallel each chunk is
+	 * folded on its own and the partial results are folded in order, which equals
+	 * the sequential fold only for an associative function.
+	 */
+	static Script fold(ScriptArray storage, int from, int to, Functional functional,
+			java.util.concurrent.ForkJoinPool pool) {
+		Fold fold = new Fold(storage, from, to, functional, ScriptTasks.chunk(to - from, pool));
+		return fold.chunk == 0 ? fold.compute() : pool.invoke(fold);
+	}
+
+	/**
+	 * <i>ScriptTasks::search(ScriptArray, int, int, Functional, boolean, java.util.concurrent.ForkJoinPool)</i><br />
+	 * Returns the first position of the range at which the truth of the function is
+	 * the expected one, or -1. In parallel, chunks past a position already found stop early.
+	 */
+	static int search(ScriptArray storage, int from, int to, Functional functional, boolean expected,
+			java.util.concurrent.ForkJoinPool pool) {
+		Search search = new Search(storage, from, to, functional, expected,
+				new java.util.concurrent.atomic.AtomicInteger(to), ScriptTasks.chunk(to - from, pool));
+		if (search.chunk == 0) {
+			search.compute();
+		} else {
+			pool.invoke(search);
+		}
+		int found = search.found.get();
+		return found < to ? found : -1;
+	}
+
+	/**
+	 * <i>ScriptTasks::comparator(Functional)</i><br />
+	 * Returns a comparator calling the function on two elements, which must return
+	 * a Number whose sign gives their order.
+	 */
+	static java.util.Comparator<Script> comparator(Functional functional) {
+		return (left, right) -> {
+			Script result = functional.run(left, right);
+			if (result == null || result.type != Script.Type.Number) {
+				throw new java.lang.RuntimeException(
+						"IllegalArgumentException\n\t" +
+						"A comparator function must return a Number, not " + (result == null ? "null" : result.typeof())
+				);
+			}
+			return java.lang.Integer.signum((java.lang.Integer)result.script);
+		};
+	}
+
+	/**
+	 * <i>ScriptTasks::truth(Script)</i><br />
+	 * Returns the truth of the result of a function: false for null, Undefined,
+	 * Null, false, 0 and the empty String, true for anything else.
+	 */
+	static boolean truth(Script result) {
+		if (result == null) {
+			return false;
+		}
+		switch (result.type) {
+		case Undefined:
+		case Null:
+			return false;
+		case Boolean:
+			return (java.lang.Boolean)result.script;
+		case Number:
+			return (java.lang.Integer)result.script != 0;
+		case String:
+			return !((java.lang.String)result.script).isEmpty();
+		default:
+			return true;
+		}
+	}
+
+	/** Runs a pass on the calling thread or on the pool */
+	private static void apply(Pass pass, java.util.concurrent.ForkJoinPool pool) {
+		if (pass.chunk == 0) {
+			pass.compute();
+		} else {
+			pool.invoke(pass);
+		}
+	}
+
+	/** Element-wise pass over a range, halved until it fits in a chunk */
+	private static final class Pass extends java.util.concurrent.RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int kind;
+		private final ScriptArray storage;
+		private final int from;
+		private final int to;
+		private final Functional functional;
+		private final Script[] results;
+		private final boolean[] truths;
+		private final int chunk;
+
+		/** Position of the first element of the whole range, where the results start */
+		private final int base;
+
+		Pass(int kind, ScriptArray storage, int from, int to, Functional functional,
+				Script[] results, boolean[] truths, int chunk) {
+			this(kind, storage, from, to, functional, results, truths, chunk, from);
+		}
+
+		private Pass(int kind, ScriptArray storage, int from, int to, Functional functional,
+				Script[] results, boolean[] truths, int chunk, int base) {
+			this.kind = kind;
+			this.storage = storage;
+			this.from = from;
+			this.to = to;
+			this.functional = functional;
+			this.results = results;
+			this.truths = truths;
+			this.chunk = chunk;
+			this.base = base;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.chunk != 0 && this.to - this.from > this.chunk) {
+				int middle = (this.from + this.to) >>> 1;
+				java.util.concurrent.ForkJoinTask.invokeAll(
+						new Pass(this.kind, this.storage, this.from, middle, this.functional,
+								this.results, this.truths, this.chunk, this.base),
+						new Pass(this.kind, this.storage, middle, this.to, this.functional,
+								this.results, this.truths, this.chunk, this.base));
+				return;
+			}
+			ScriptArray storage = this.storage;
+			Functional functional = this.functional;
+			for (int position = this.from; position < this.to; position++) {
+				Script result = functional.run(storage.valueAt(position));
+				switch (this.kind) {
+				case ScriptTasks.MAP:
+					/** Results are copied like any element added to an Array */
+					this.results[position - this.base] = result == null ? Script.Null() : new Script(result);
+					break;
+				case ScriptTasks.TEST:
+					this.truths[position - this.base] = ScriptTasks.truth(result);
+					break;
+				default:
+					break;
+				}
+			}
+		}
+	}
+
+	/** Fold of a range from its first element, halved until it fits in a chunk */
+	private static final class Fold extends java.util.concurrent.RecursiveTask<Script> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final ScriptArray storage;
+		private final int from;
+		private final int to;
+		private final Functional functional;
+		private final int chunk;
+
+		Fold(ScriptArray storage, int from, int to, Functional functional, int chunk) {
+			this.storage = storage;
+			this.from = from;
+			this.to = to;
+			this.functional = functional;
+			this.chunk = chunk;
+		}
+
+		@Override
+		protected Script compute() {
+			if (this.chunk != 0 && this.to - this.from > this.chunk) {
+				int middle = (this.from + this.to) >>> 1;
+				Fold right = new Fold(this.storage, middle, this.to, this.functional, this.chunk);
+				right.fork();
+				Script left = new Fold(this.storage, this.from, middle, this.functional, this.chunk).compute();
+				return ScriptTasks.nonNull(this.functional.run(left, right.join()));
+			}
+			Script accumulator = this.storage.valueAt(this.from);
+			for (int position = this.from + 1; position < this.to; position++) {
+				accumulator = ScriptTasks.nonNull(this.functional.run(accumulator, this.storage.valueAt(position)));
+			}
+			return accumulator;
+		}
+	}
+
+	/** Search for the first position of a given truth, halved until it fits in a chunk */
+	private static final class Search extends java.util.concurrent.RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final ScriptArray storage;
+		private final int from;
+		private final int to;
+		private final Functional functional;
+		private final boolean expected;
+		private final java.util.concurrent.atomic.AtomicInteger found;
+		private final int chunk;
+
+		Search(ScriptArray storage, int from, int to, Functional functional, boolean expected,
+				java.util.concurrent.atomic.AtomicInteger found, int chunk) {
+			this.storage = storage;
+			this.from = from;
+			this.to = to;
+			this.functional = functional;
+			this.expected = expected;
+			this.found = found;
+			this.chunk = chunk;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.chunk != 0 && this.to - this.from > this.chunk) {
+				int middle = (this.from + this.to) >>> 1;
+				java.util.concurrent.ForkJoinTask.invokeAll(
+						new Search(this.storage, this.from, middle, this.functional, this.expected, this.found, this.chunk),
+						new Search(this.storage, middle, this.to, this.functional, this.expected, this.found, this.chunk));
+				return;
+			}
+			java.util.concurrent.atomic.AtomicInteger found = this.found;
+			for (int position = this.from; position < this.to && position < found.get(); position++) {
+				if (ScriptTasks.truth(this.functional.run(this.storage.valueAt(position))) == this.expected) {
+					/** Keep the lowest position found by any chunk */
+					int current;
+					while (position < (current = found.get()) && !found.compareAndSet(current, position)) {}
+					return;
+				}
+			}
+		}
+	}
+
+	/** A function returning null returns Null */
+	static Script nonNull(Script result) {
+		return result == null ? Script.Null() : result;
+	}
+}